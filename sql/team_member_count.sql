@@ -0,0 +1,12 @@
+-- 队伍表冗余存储当前人数，加入、退出时原子更新，不再每次 count(*) user_team 表
+-- 执行后回填已有队伍的人数（之后由 TeamMemberCountJob 定时校正）
+
+alter table team
+    add column memberCount int default 0 not null comment '当前人数' after maxNum;
+
+update team t
+    left join (select teamId, count(*) as num
+               from user_team
+               where isDelete = 0
+               group by teamId) c on c.teamId = t.id
+set t.memberCount = ifnull(c.num, 0);
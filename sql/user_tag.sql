@@ -0,0 +1,21 @@
+-- 标签字典表和用户标签关系表（user.tags 的规范化存储，用于按标签搜索用户）
+-- 关系表在用户修改标签时整体删除重建，不使用逻辑删除
+
+create table if not exists tag
+(
+    id         bigint auto_increment comment 'id' primary key,
+    tagName    varchar(256)                       not null comment '标签名',
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    updateTime datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    constraint uniIdx_tagName unique (tagName)
+) comment '标签';
+
+create table if not exists user_tag
+(
+    id         bigint auto_increment comment 'id' primary key,
+    userId     bigint                             not null comment '用户id',
+    tagId      bigint                             not null comment '标签id',
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    constraint uniIdx_tagId_userId unique (tagId, userId),
+    index idx_userId (userId)
+) comment '用户标签关系';
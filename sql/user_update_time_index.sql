@@ -0,0 +1,5 @@
+-- 用户标签索引从快照文件恢复后、以及各节点定时补齐时，按 updateTime 查询修改过的用户
+-- 依赖 user.updateTime 为 on update CURRENT_TIMESTAMP（逻辑删除也会刷新它）
+
+alter table user
+    add index idx_updateTime (updateTime);
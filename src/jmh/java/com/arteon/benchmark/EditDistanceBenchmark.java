@@ -0,0 +1,81 @@
+package com.arteon.benchmark;
+
+import com.arteon.utils.AlgorithmUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编辑距离算法性能测试：字符串版、int 版、带剪枝的 int 版
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EditDistanceBenchmark {
+
+    private static final int PAIR_NUM = 1024;
+
+    private final List<List<String>> stringTags1 = new ArrayList<>();
+
+    private final List<List<String>> stringTags2 = new ArrayList<>();
+
+    private final int[][] intTags1 = new int[PAIR_NUM][];
+
+    private final int[][] intTags2 = new int[PAIR_NUM][];
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        for (int i = 0; i < PAIR_NUM; i++) {
+            List<String> tags1 = SyntheticUsers.randomTags(random);
+            List<String> tags2 = SyntheticUsers.randomTags(random);
+            stringTags1.add(tags1);
+            stringTags2.add(tags2);
+            intTags1[i] = encode(tags1);
+            intTags2[i] = encode(tags2);
+        }
+    }
+
+    @Benchmark
+    public int stringVersion() {
+        int i = next();
+        return AlgorithmUtils.minDistance(stringTags1.get(i), stringTags2.get(i));
+    }
+
+    @Benchmark
+    public int intVersion() {
+        int i = next();
+        return AlgorithmUtils.minDistance(intTags1[i], intTags2[i]);
+    }
+
+    /**
+     * 模拟全量匹配时堆已满、淘汰线很低的情况
+     */
+    @Benchmark
+    public int boundedIntVersion() {
+        int i = next();
+        return AlgorithmUtils.minDistance(intTags1[i], intTags2[i], 2);
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (PAIR_NUM - 1);
+        return cursor;
+    }
+
+    private static int[] encode(List<String> tags) {
+        int[] tagIds = new int[tags.size()];
+        for (int i = 0; i < tagIds.length; i++) {
+            tagIds[i] = Integer.parseInt(tags.get(i).substring(3));
+        }
+        return tagIds;
+    }
+
+}
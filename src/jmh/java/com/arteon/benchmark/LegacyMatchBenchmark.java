@@ -0,0 +1,48 @@
+package com.arteon.benchmark;
+
+import com.arteon.match.UserTagIndex;
+import com.arteon.utils.AlgorithmUtils;
+import com.arteon.utils.TopKHeap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户匹配对照组：模拟原来的做法，每行解析 Json + 字符串编辑距离
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class LegacyMatchBenchmark {
+
+    private static final int K = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    private int userNum;
+
+    private List<String> tagsJsonList;
+
+    private List<String> queryTagList;
+
+    @Setup
+    public void setup() {
+        SyntheticUsers users = new SyntheticUsers(userNum);
+        tagsJsonList = users.getTagsJsonList();
+        queryTagList = users.getTagsList().get(0);
+    }
+
+    @Benchmark
+    public long[] legacyScan() {
+        TopKHeap topKHeap = new TopKHeap(K);
+        for (int i = 1; i < tagsJsonList.size(); i++) {
+            List<String> tags = UserTagIndex.parseTags(tagsJsonList.get(i));
+            topKHeap.offer(i + 1, AlgorithmUtils.minDistance(tags, queryTagList));
+        }
+        return topKHeap.sortedIds();
+    }
+
+}
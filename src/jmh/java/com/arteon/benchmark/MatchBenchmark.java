@@ -0,0 +1,67 @@
+package com.arteon.benchmark;
+
+import com.arteon.commons.MatchStrategyEnum;
+import com.arteon.config.MatchConfig;
+import com.arteon.match.MatchEngine;
+import com.arteon.utils.TagVector;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户匹配打分循环性能测试（{@link MatchEngine}，对照组见 {@link LegacyMatchBenchmark}）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class MatchBenchmark {
+
+    private static final int K = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    private int userNum;
+
+    @Param({"EDIT_DISTANCE", "JACCARD", "COSINE"})
+    private MatchStrategyEnum strategy;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private SyntheticUsers users;
+
+    private MatchEngine matchEngine;
+
+    private ForkJoinPool forkJoinPool;
+
+    private TagVector queryTags;
+
+    @Setup
+    public void setup() {
+        users = new SyntheticUsers(userNum);
+        MatchConfig matchConfig = new MatchConfig();
+        matchConfig.setParallel(parallel);
+        matchConfig.setParallelism(Runtime.getRuntime().availableProcessors());
+        matchConfig.setParallelThreshold(0);
+        forkJoinPool = matchConfig.matchForkJoinPool();
+        matchEngine = new MatchEngine();
+        ReflectionTestUtils.setField(matchEngine, "matchConfig", matchConfig);
+        ReflectionTestUtils.setField(matchEngine, "matchForkJoinPool", forkJoinPool);
+        queryTags = users.getSnapshot().tagsAt(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        forkJoinPool.shutdown();
+    }
+
+    @Benchmark
+    public long[] engine() {
+        return matchEngine.topK(users.getSnapshot(), queryTags, 1, K, strategy);
+    }
+
+}
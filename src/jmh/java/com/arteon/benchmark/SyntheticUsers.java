@@ -0,0 +1,79 @@
+package com.arteon.benchmark;
+
+import com.arteon.match.TagDictionary;
+import com.arteon.match.UserTagSnapshot;
+import com.arteon.utils.TagVector;
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 性能测试用的模拟用户数据
+ * <p>
+ * 标签总数 300 个，热门标签出现得更多（近似长尾分布），每个用户 2 ~ 8 个标签。数据用固定种子生成，每次运行完全一样。
+ */
+public class SyntheticUsers {
+
+    public static final int TAG_NUM = 300;
+
+    private final List<String> tagsJsonList = new ArrayList<>();
+
+    private final List<List<String>> tagsList = new ArrayList<>();
+
+    private final TagDictionary tagDictionary = new TagDictionary();
+
+    private final UserTagSnapshot snapshot;
+
+    public SyntheticUsers(int userNum) {
+        Random random = new Random(userNum);
+        Gson gson = new Gson();
+        long[] userIds = new long[userNum];
+        TagVector[] userTags = new TagVector[userNum];
+        for (int i = 0; i < userNum; i++) {
+            List<String> tags = randomTags(random);
+            tagsList.add(tags);
+            tagsJsonList.add(gson.toJson(tags));
+            int[] tagIds = new int[tags.size()];
+            for (int j = 0; j < tagIds.length; j++) {
+                tagIds[j] = tagDictionary.getOrCreate(tags.get(j));
+            }
+            userIds[i] = i + 1;
+            userTags[i] = TagVector.of(tagIds);
+        }
+        snapshot = new UserTagSnapshot(userIds, userTags, tagDictionary.size());
+    }
+
+    /**
+     * 随机生成一组标签，r^2 让编号小的标签更热门
+     */
+    public static List<String> randomTags(Random random) {
+        int num = 2 + random.nextInt(7);
+        Set<String> tags = new LinkedHashSet<>();
+        while (tags.size() < num) {
+            double r = random.nextDouble();
+            tags.add("tag" + (int) (TAG_NUM * r * r));
+        }
+        return new ArrayList<>(tags);
+    }
+
+    public List<String> getTagsJsonList() {
+        return tagsJsonList;
+    }
+
+    public List<List<String>> getTagsList() {
+        return tagsList;
+    }
+
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    public UserTagSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+}
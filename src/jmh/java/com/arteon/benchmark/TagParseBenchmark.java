@@ -0,0 +1,50 @@
+package com.arteon.benchmark;
+
+import com.arteon.match.UserTagIndex;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 标签 Json 解析性能测试：每行新建 TypeToken（原来的写法） vs 复用 Type 和 Gson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class TagParseBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int userNum;
+
+    private List<String> tagsJsonList;
+
+    @Setup
+    public void setup() {
+        tagsJsonList = new SyntheticUsers(userNum).getTagsJsonList();
+    }
+
+    @Benchmark
+    public void freshTypeToken(Blackhole blackhole) {
+        Gson gson = new Gson();
+        for (String json : tagsJsonList) {
+            List<String> tags = gson.fromJson(json, new TypeToken<List<String>>() {
+            }.getType());
+            blackhole.consume(tags);
+        }
+    }
+
+    @Benchmark
+    public void sharedType(Blackhole blackhole) {
+        for (String json : tagsJsonList) {
+            blackhole.consume(UserTagIndex.parseTags(json));
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.arteon.benchmark;
+
+import com.arteon.match.TagInvertedIndex;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 按标签搜索用户性能测试：遍历所有用户解析 Json 过滤（原来的做法） vs 倒排索引求交集
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class TagSearchBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int userNum;
+
+    /**
+     * 一个热门标签 + 一个中等热度的标签
+     */
+    private final List<String> tagNameList = Arrays.asList("tag1", "tag60");
+
+    private SyntheticUsers users;
+
+    private TagInvertedIndex invertedIndex;
+
+    private int[] queryTagIds;
+
+    @Setup
+    public void setup() {
+        users = new SyntheticUsers(userNum);
+        invertedIndex = new TagInvertedIndex(users.getSnapshot(), users.getTagDictionary().size());
+        queryTagIds = tagNameList.stream().mapToInt(users.getTagDictionary()::lookup).toArray();
+    }
+
+    @Benchmark
+    public List<String> legacyFilter() {
+        Gson gson = new Gson();
+        return users.getTagsJsonList().stream().filter(tagsJsonStr -> {
+            Set<String> tagNameSet = gson.fromJson(tagsJsonStr, new TypeToken<Set<String>>() {
+            }.getType());
+            tagNameSet = Optional.ofNullable(tagNameSet).orElse(new HashSet<>());
+            for (String tagName : tagNameList) {
+                if (!tagNameSet.contains(tagName)) {
+                    return false;
+                }
+            }
+            return true;
+        }).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public long[] invertedIndex() {
+        return invertedIndex.search(queryTagIds);
+    }
+
+}
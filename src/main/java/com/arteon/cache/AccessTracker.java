@@ -0,0 +1,188 @@
+package com.arteon.cache;
+
+import com.arteon.commons.MatchStrategyEnum;
+import com.arteon.config.CacheConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 统计推荐和匹配查询的访问热度，给缓存预热挑选要预热的查询
+ * <p>
+ * 热度放在 Redis 有序集合 {@link #HOT_KEY} 中，member 为查询（见 {@link HotQuery}），score 为衰减后的访问次数。
+ * 每个请求只在本地计数，每隔两秒用管道批量累加到 Redis，不给请求增加 Redis 访问。
+ * 衰减由预热任务完成（见 PreCacheJob）。
+ */
+@Component
+@Slf4j
+public class AccessTracker {
+
+    public static final String HOT_KEY = "pm:cache:hot";
+
+    /**
+     * 两次上报之间本地最多攒多少个不同的查询，超过的这一轮不统计
+     */
+    private static final int MAX_PENDING = 10000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheConfig cacheConfig;
+
+    /**
+     * 本地计数：查询 -> 上次上报之后的访问次数
+     * <p>
+     * 计数用 merge 累加、上报用 remove 取走，两者对同一个 key 都是原子的，上报期间的访问会计入下一轮，不会丢。
+     */
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    public void recordRecommend(long userId, long pageNum, long pageSize) {
+        this.record(HotQuery.RECOMMEND + ":" + userId + ":" + pageNum + ":" + pageSize);
+    }
+
+    public void recordMatch(long userId, long num, MatchStrategyEnum strategyEnum) {
+        this.record(HotQuery.MATCH + ":" + userId + ":" + num + ":" + strategyEnum.name());
+    }
+
+    private void record(String member) {
+        if (!cacheConfig.getWarm().isEnabled()) {
+            return;
+        }
+        if (pending.size() >= MAX_PENDING && !pending.containsKey(member)) {
+            return;
+        }
+        pending.merge(member, 1L, Long::sum);
+    }
+
+    /**
+     * 把本地的计数批量累加到 Redis
+     */
+    @Scheduled(fixedDelay = 2000)
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> members = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        this.drain(members, counts);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (int i = 0; i < members.size(); i++) {
+                    stringConnection.zIncrBy(HOT_KEY, counts.get(i), members.get(i));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("flush access stats error", e);
+        }
+    }
+
+    /**
+     * 取走本地的计数
+     */
+    void drain(List<String> members, List<Long> counts) {
+        for (String member : pending.keySet()) {
+            Long count = pending.remove(member);
+            if (count != null) {
+                members.add(member);
+                counts.add(count);
+            }
+        }
+    }
+
+    /**
+     * 一个被统计热度的查询
+     * <p>
+     * 格式：recommend:{userId}:{pageNum}:{pageSize} 或 match:{userId}:{num}:{算法}
+     */
+    public static class HotQuery {
+
+        public static final String RECOMMEND = "recommend";
+
+        public static final String MATCH = "match";
+
+        private final String type;
+
+        private final long userId;
+
+        /**
+         * 推荐为页码，匹配不使用
+         */
+        private final long pageNum;
+
+        /**
+         * 推荐为页大小，匹配为返回的用户数
+         */
+        private final long size;
+
+        private final MatchStrategyEnum strategyEnum;
+
+        private HotQuery(String type, long userId, long pageNum, long size, MatchStrategyEnum strategyEnum) {
+            this.type = type;
+            this.userId = userId;
+            this.pageNum = pageNum;
+            this.size = size;
+            this.strategyEnum = strategyEnum;
+        }
+
+        /**
+         * @return 格式不对返回 null
+         */
+        public static HotQuery parse(String member) {
+            String[] parts = member.split(":");
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                if (RECOMMEND.equals(parts[0])) {
+                    return new HotQuery(RECOMMEND, Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                            Long.parseLong(parts[3]), null);
+                }
+                if (MATCH.equals(parts[0])) {
+                    return new HotQuery(MATCH, Long.parseLong(parts[1]), 0, Long.parseLong(parts[2]),
+                            MatchStrategyEnum.valueOf(parts[3]));
+                }
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            return null;
+        }
+
+        public boolean isRecommend() {
+            return RECOMMEND.equals(type);
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public long getPageNum() {
+            return pageNum;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public MatchStrategyEnum getStrategyEnum() {
+            return strategyEnum;
+        }
+
+    }
+
+}
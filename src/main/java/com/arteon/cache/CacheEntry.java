@@ -0,0 +1,56 @@
+package com.arteon.cache;
+
+import java.io.Serializable;
+
+/**
+ * 放进 Redis 的缓存值，额外记录逻辑过期时间和加载耗时，用来判断要不要提前刷新
+ */
+public class CacheEntry<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final T value;
+
+    /**
+     * 过期时间（毫秒时间戳），和 Redis key 的过期时间一致
+     */
+    private final long expireAt;
+
+    /**
+     * 这次加载花了多少毫秒
+     */
+    private final long loadMillis;
+
+    public CacheEntry(T value, long expireAt, long loadMillis) {
+        this.value = value;
+        this.expireAt = expireAt;
+        this.loadMillis = loadMillis;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getExpireAt() {
+        return expireAt;
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * 概率提前刷新（XFetch）：now - loadMillis * beta * ln(random) >= expireAt 时刷新
+     * <p>
+     * 离过期越近、加载越慢，越有可能提前刷新；每个请求独立抽签，热点 key 在过期前就会被某个请求刷新掉，
+     * 不会所有请求在过期那一刻一起打到数据库。
+     *
+     * @param now    当前时间（毫秒）
+     * @param beta   提前刷新的激进程度，越大越早刷新，0 表示不提前刷新
+     * @param random (0, 1] 之间的随机数
+     */
+    public boolean shouldRefresh(long now, double beta, double random) {
+        return now - loadMillis * beta * Math.log(random) >= expireAt;
+    }
+
+}
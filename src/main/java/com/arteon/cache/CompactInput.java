@@ -0,0 +1,90 @@
+package com.arteon.cache;
+
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑二进制格式的读取，和 {@link CompactOutput} 对应
+ */
+final class CompactInput {
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private final int limit;
+
+    CompactInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    int readByte() {
+        check(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    byte[] readBytes(int length) {
+        check(length);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("malformed varint");
+    }
+
+    long readZigZag() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    double readDouble() {
+        check(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (long) (buffer[position++] & 0xFF) << (i << 3);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    String readString() {
+        long length = readVarLong();
+        if (length == 0) {
+            return null;
+        }
+        int byteLength = (int) (length - 1);
+        check(byteLength);
+        String value = new String(buffer, position, byteLength, StandardCharsets.UTF_8);
+        position += byteLength;
+        return value;
+    }
+
+    Long readNullableLong() {
+        return readByte() == 0 ? null : readZigZag();
+    }
+
+    Integer readNullableInt() {
+        Long value = readNullableLong();
+        return value == null ? null : value.intValue();
+    }
+
+    private void check(int length) {
+        if (length < 0 || position + length > limit) {
+            throw new SerializationException("unexpected end of compact value");
+        }
+    }
+
+}
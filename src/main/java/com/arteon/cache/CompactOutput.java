@@ -0,0 +1,104 @@
+package com.arteon.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 紧凑二进制格式的写入缓冲区：整数用变长编码（long 先 zigzag），字符串为 UTF-8
+ */
+final class CompactOutput {
+
+    private byte[] buffer;
+
+    private int size;
+
+    CompactOutput(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    void writeByte(int b) {
+        ensure(1);
+        buffer[size++] = (byte) b;
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    /**
+     * 无符号变长整数，每个字节 7 位
+     */
+    void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * 有符号变长整数，先 zigzag 编码，绝对值小的负数也很短
+     */
+    void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[size++] = (byte) (bits >>> (i << 3));
+        }
+    }
+
+    /**
+     * 可以为 null 的字符串：长度 + 1（0 表示 null）+ UTF-8 字节
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 可以为 null 的整数：一个字节标记是否为 null，后面跟 zigzag 变长编码
+     */
+    void writeNullableLong(Long value) {
+        if (value == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        writeZigZag(value);
+    }
+
+    void writeNullableInt(Integer value) {
+        writeNullableLong(value == null ? null : value.longValue());
+    }
+
+    private void ensure(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(size + length, buffer.length * 2));
+        }
+    }
+
+}
@@ -0,0 +1,447 @@
+package com.arteon.cache;
+
+import com.arteon.config.CacheConfig;
+import com.arteon.domain.User;
+import com.arteon.domain.vo.CursorPageVO;
+import com.arteon.domain.vo.TeamVO;
+import com.arteon.domain.vo.UserVO;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * RedisTemplate 的紧凑二进制值序列化器
+ * <p>
+ * 常用的缓存值（User、Page、CursorPageVO、TeamVO、CacheEntry、long[] 等）按固定的字段顺序写成二进制，不带类描述信息，
+ * 其他类型退回 JDK 序列化嵌在里面。格式：
+ * <pre>
+ * 0xC7 flags [原始长度(varint)，仅压缩时] 值
+ * 值 = 类型(byte) + 内容
+ * </pre>
+ * 超过阈值的值用 LZ4 压缩（flags 第 0 位）。读取时遇到以 0xACED 开头的旧数据（JDK 序列化）照常读取，
+ * 升级前写入的缓存不用清空。
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte MAGIC = (byte) 0xC7;
+
+    private static final int FLAG_LZ4 = 1;
+
+    private static final int HEADER_SIZE = 2;
+
+    /*
+     * 值的类型，只能在后面追加，不能修改已有的编号
+     */
+
+    private static final int NULL = 0;
+
+    private static final int STRING = 1;
+
+    private static final int LONG = 2;
+
+    private static final int INTEGER = 3;
+
+    private static final int BOOLEAN = 4;
+
+    private static final int DOUBLE = 5;
+
+    private static final int DATE = 6;
+
+    private static final int LONG_ARRAY = 7;
+
+    private static final int LIST = 8;
+
+    private static final int CACHE_ENTRY = 9;
+
+    private static final int PAGE = 10;
+
+    private static final int USER = 11;
+
+    private static final int USER_VO = 12;
+
+    private static final int TEAM_VO = 13;
+
+    private static final int CURSOR_PAGE = 14;
+
+    private static final int JDK = 127;
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    private final CacheConfig.Serializer config;
+
+    private final LZ4Compressor compressor;
+
+    private final LZ4FastDecompressor decompressor;
+
+    public CompactRedisSerializer(CacheConfig.Serializer config) {
+        this.config = config;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        // 迁移期间还有旧版本的节点在读，先继续写 JDK 格式
+        if (!config.isCompactEnabled()) {
+            return jdkSerializer.serialize(value);
+        }
+        CompactOutput out = new CompactOutput(256);
+        out.writeByte(MAGIC);
+        out.writeByte(0);
+        this.write(out, value);
+        int length = out.size() - HEADER_SIZE;
+        if (!config.isCompressEnabled() || length < config.getCompressThreshold()) {
+            return out.toByteArray();
+        }
+        byte[] compressed = new byte[compressor.maxCompressedLength(length)];
+        int compressedLength = compressor.compress(out.buffer(), HEADER_SIZE, length, compressed, 0, compressed.length);
+        if (compressedLength + 5 >= length) {
+            // 压缩不划算（比如大部分是随机字符串）就不压缩
+            return out.toByteArray();
+        }
+        CompactOutput result = new CompactOutput(compressedLength + 8);
+        result.writeByte(MAGIC);
+        result.writeByte(FLAG_LZ4);
+        result.writeVarLong(length);
+        result.writeBytes(compressed, 0, compressedLength);
+        return result.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        // 升级前写入的 JDK 序列化数据
+        if (bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED) {
+            return jdkSerializer.deserialize(bytes);
+        }
+        if (bytes[0] != MAGIC || bytes.length < HEADER_SIZE) {
+            throw new SerializationException("unknown value format");
+        }
+        if ((bytes[1] & FLAG_LZ4) == 0) {
+            return this.read(new CompactInput(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE));
+        }
+        CompactInput header = new CompactInput(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+        int length = (int) header.readVarLong();
+        int offset = HEADER_SIZE + varLongSize(length);
+        byte[] raw = new byte[length];
+        try {
+            decompressor.decompress(bytes, offset, raw, 0, length);
+        } catch (RuntimeException e) {
+            throw new SerializationException("malformed lz4 value", e);
+        }
+        return this.read(new CompactInput(raw, 0, length));
+    }
+
+    private void write(CompactOutput out, Object value) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeZigZag((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeZigZag((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeByte((Boolean) value ? 1 : 0);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeZigZag(((Date) value).getTime());
+        } else if (value instanceof long[]) {
+            out.writeByte(LONG_ARRAY);
+            writeLongArray(out, (long[]) value);
+        } else if (value instanceof ArrayList) {
+            out.writeByte(LIST);
+            writeList(out, (List<?>) value);
+        } else if (value instanceof CacheEntry) {
+            CacheEntry<?> entry = (CacheEntry<?>) value;
+            out.writeByte(CACHE_ENTRY);
+            out.writeZigZag(entry.getExpireAt());
+            out.writeZigZag(entry.getLoadMillis());
+            this.write(out, entry.getValue());
+        } else if (value.getClass() == Page.class) {
+            Page<?> page = (Page<?>) value;
+            out.writeByte(PAGE);
+            out.writeZigZag(page.getCurrent());
+            out.writeZigZag(page.getSize());
+            out.writeZigZag(page.getTotal());
+            out.writeByte(page.searchCount() ? 1 : 0);
+            writeList(out, page.getRecords());
+        } else if (value.getClass() == CursorPageVO.class) {
+            CursorPageVO<?> cursorPageVO = (CursorPageVO<?>) value;
+            out.writeByte(CURSOR_PAGE);
+            out.writeString(cursorPageVO.getNextCursor());
+            out.writeByte(cursorPageVO.isHasMore() ? 1 : 0);
+            writeList(out, cursorPageVO.getRecords());
+        } else if (value.getClass() == User.class) {
+            out.writeByte(USER);
+            writeUser(out, (User) value);
+        } else if (value.getClass() == UserVO.class) {
+            out.writeByte(USER_VO);
+            writeUserVO(out, (UserVO) value);
+        } else if (value.getClass() == TeamVO.class) {
+            out.writeByte(TEAM_VO);
+            writeTeamVO(out, (TeamVO) value);
+        } else {
+            // 没有专门编码的类型退回 JDK 序列化
+            byte[] bytes = jdkSerializer.serialize(value);
+            out.writeByte(JDK);
+            out.writeVarLong(bytes.length);
+            out.writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    private Object read(CompactInput in) {
+        int type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readString();
+            case LONG:
+                return in.readZigZag();
+            case INTEGER:
+                return (int) in.readZigZag();
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case DOUBLE:
+                return in.readDouble();
+            case DATE:
+                return new Date(in.readZigZag());
+            case LONG_ARRAY:
+                return readLongArray(in);
+            case LIST:
+                return readList(in);
+            case CACHE_ENTRY: {
+                long expireAt = in.readZigZag();
+                long loadMillis = in.readZigZag();
+                return new CacheEntry<>(this.read(in), expireAt, loadMillis);
+            }
+            case PAGE: {
+                long current = in.readZigZag();
+                long size = in.readZigZag();
+                long total = in.readZigZag();
+                boolean searchCount = in.readByte() != 0;
+                Page<Object> page = new Page<>(current, size, total, searchCount);
+                page.setRecords(readList(in));
+                return page;
+            }
+            case CURSOR_PAGE: {
+                CursorPageVO<Object> cursorPageVO = new CursorPageVO<>();
+                cursorPageVO.setNextCursor(in.readString());
+                cursorPageVO.setHasMore(in.readByte() != 0);
+                cursorPageVO.setRecords(readList(in));
+                return cursorPageVO;
+            }
+            case USER:
+                return readUser(in);
+            case USER_VO:
+                return readUserVO(in);
+            case TEAM_VO:
+                return readTeamVO(in);
+            case JDK:
+                return jdkSerializer.deserialize(in.readBytes((int) in.readVarLong()));
+            default:
+                throw new SerializationException("unknown value type: " + type);
+        }
+    }
+
+    private void writeList(CompactOutput out, List<?> list) {
+        if (list == null) {
+            out.writeVarLong(0);
+            return;
+        }
+        out.writeVarLong(list.size() + 1L);
+        for (Object item : list) {
+            this.write(out, item);
+        }
+    }
+
+    private List<Object> readList(CompactInput in) {
+        long size = in.readVarLong();
+        if (size == 0) {
+            return null;
+        }
+        List<Object> list = new ArrayList<>((int) Math.min(size - 1, 1024));
+        for (long i = 1; i < size; i++) {
+            list.add(this.read(in));
+        }
+        return list;
+    }
+
+    /**
+     * 按和前一个元素的差值编码，id 相近时每个只占一两个字节
+     */
+    private static void writeLongArray(CompactOutput out, long[] values) {
+        out.writeVarLong(values.length);
+        long previous = 0;
+        for (long value : values) {
+            out.writeZigZag(value - previous);
+            previous = value;
+        }
+    }
+
+    private static long[] readLongArray(CompactInput in) {
+        long[] values = new long[(int) in.readVarLong()];
+        long previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            previous += in.readZigZag();
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    /*
+     * 实体按固定的字段顺序编码，不写字段名。字段有变化时换一个新的类型编号，旧编号的读取逻辑保留到旧数据过期
+     */
+
+    private static void writeUser(CompactOutput out, User user) {
+        out.writeNullableLong(user.getId());
+        out.writeString(user.getUsername());
+        out.writeString(user.getUserAccount());
+        out.writeString(user.getAvatarUrl());
+        out.writeNullableInt(user.getGender());
+        out.writeString(user.getUserPassword());
+        out.writeString(user.getPhone());
+        out.writeString(user.getEmail());
+        out.writeNullableInt(user.getUserStatus());
+        writeDate(out, user.getCreateTime());
+        writeDate(out, user.getUpdateTime());
+        out.writeNullableInt(user.getIsDelete());
+        out.writeNullableInt(user.getUserRole());
+        out.writeString(user.getPlanetCode());
+        out.writeString(user.getTags());
+    }
+
+    private static User readUser(CompactInput in) {
+        User user = new User();
+        user.setId(in.readNullableLong());
+        user.setUsername(in.readString());
+        user.setUserAccount(in.readString());
+        user.setAvatarUrl(in.readString());
+        user.setGender(in.readNullableInt());
+        user.setUserPassword(in.readString());
+        user.setPhone(in.readString());
+        user.setEmail(in.readString());
+        user.setUserStatus(in.readNullableInt());
+        user.setCreateTime(readDate(in));
+        user.setUpdateTime(readDate(in));
+        user.setIsDelete(in.readNullableInt());
+        user.setUserRole(in.readNullableInt());
+        user.setPlanetCode(in.readString());
+        user.setTags(in.readString());
+        return user;
+    }
+
+    private static void writeUserVO(CompactOutput out, UserVO userVO) {
+        out.writeZigZag(userVO.getId());
+        out.writeString(userVO.getUsername());
+        out.writeString(userVO.getUserAccount());
+        out.writeString(userVO.getAvatarUrl());
+        out.writeNullableInt(userVO.getGender());
+        out.writeString(userVO.getPhone());
+        out.writeString(userVO.getEmail());
+        out.writeString(userVO.getTags());
+        out.writeNullableInt(userVO.getUserStatus());
+        writeDate(out, userVO.getCreateTime());
+        writeDate(out, userVO.getUpdateTime());
+        out.writeNullableInt(userVO.getUserRole());
+        out.writeString(userVO.getPlanetCode());
+    }
+
+    private static UserVO readUserVO(CompactInput in) {
+        UserVO userVO = new UserVO();
+        userVO.setId(in.readZigZag());
+        userVO.setUsername(in.readString());
+        userVO.setUserAccount(in.readString());
+        userVO.setAvatarUrl(in.readString());
+        userVO.setGender(in.readNullableInt());
+        userVO.setPhone(in.readString());
+        userVO.setEmail(in.readString());
+        userVO.setTags(in.readString());
+        userVO.setUserStatus(in.readNullableInt());
+        userVO.setCreateTime(readDate(in));
+        userVO.setUpdateTime(readDate(in));
+        userVO.setUserRole(in.readNullableInt());
+        userVO.setPlanetCode(in.readString());
+        return userVO;
+    }
+
+    private static void writeTeamVO(CompactOutput out, TeamVO teamVO) {
+        out.writeNullableLong(teamVO.getId());
+        out.writeString(teamVO.getName());
+        out.writeString(teamVO.getDescription());
+        out.writeNullableInt(teamVO.getMaxNum());
+        writeDate(out, teamVO.getExpireTime());
+        out.writeNullableLong(teamVO.getUserId());
+        out.writeNullableInt(teamVO.getStatus());
+        writeDate(out, teamVO.getCreateTime());
+        writeDate(out, teamVO.getUpdateTime());
+        if (teamVO.getCreateUser() == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            writeUserVO(out, teamVO.getCreateUser());
+        }
+        out.writeNullableInt(teamVO.getHasJoinNum());
+        out.writeByte(teamVO.isHasJoin() ? 1 : 0);
+    }
+
+    private static TeamVO readTeamVO(CompactInput in) {
+        TeamVO teamVO = new TeamVO();
+        teamVO.setId(in.readNullableLong());
+        teamVO.setName(in.readString());
+        teamVO.setDescription(in.readString());
+        teamVO.setMaxNum(in.readNullableInt());
+        teamVO.setExpireTime(readDate(in));
+        teamVO.setUserId(in.readNullableLong());
+        teamVO.setStatus(in.readNullableInt());
+        teamVO.setCreateTime(readDate(in));
+        teamVO.setUpdateTime(readDate(in));
+        if (in.readByte() != 0) {
+            teamVO.setCreateUser(readUserVO(in));
+        }
+        teamVO.setHasJoinNum(in.readNullableInt());
+        teamVO.setHasJoin(in.readByte() != 0);
+        return teamVO;
+    }
+
+    private static void writeDate(CompactOutput out, Date date) {
+        out.writeNullableLong(date == null ? null : date.getTime());
+    }
+
+    private static Date readDate(CompactInput in) {
+        Long time = in.readNullableLong();
+        return time == null ? null : new Date(time);
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+}
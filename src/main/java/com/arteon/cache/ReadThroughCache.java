@@ -0,0 +1,410 @@
+package com.arteon.cache;
+
+import com.arteon.config.CacheConfig;
+import com.arteon.domain.vo.CacheStatsVO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 防击穿的两级读穿缓存：本地 Caffeine 缓存 + Redis
+ * <p>
+ * 先读本地缓存，没有再读 Redis，Redis 命中后放进本地缓存，热点 key 大部分请求不用访问 Redis、也不用反序列化。
+ * 任何节点写入或删除一个 key 时，通过 Redisson 的 Redis 频道通知其他节点删掉本地缓存，
+ * 收不到通知时本地缓存最多存活 localTtlSeconds。
+ * <p>
+ * 缓存未命中时同一个 key 只有一个请求去查数据库（single-flight）：同一节点内的其他请求等它的结果，
+ * 其他节点通过 Redisson 锁排队，拿到锁后先看缓存是不是已经被填好了。
+ * 过期时间随机加长一点，同一时刻写入的 key 不会同一时刻过期；
+ * 快过期的热点 key 会被某个请求按概率提前在后台刷新（见 {@link CacheEntry#shouldRefresh}），其他请求照常读旧值。
+ */
+@Component
+@Slf4j
+public class ReadThroughCache {
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private CacheConfig cacheConfig;
+
+    @Resource
+    private ValueSizeStats valueSizeStats;
+
+    /**
+     * 本节点的标识，收到自己发出的失效通知时忽略
+     */
+    private final String nodeId = UUID.randomUUID().toString().replace("-", "");
+
+    /**
+     * 本地缓存，未开启时为 null
+     */
+    private Cache<String, CacheEntry<?>> localCache;
+
+    private RTopic invalidationTopic;
+
+    private Integer listenerId;
+
+    private final LongAdder redisHits = new LongAdder();
+
+    private final LongAdder redisMisses = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 本节点正在加载的 key
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 后台提前刷新的线程池，队列满了就放弃这次刷新，等下一个请求再抽签
+     */
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(1000), r -> {
+        Thread thread = new Thread(r, "cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    @PostConstruct
+    public void init() {
+        invalidationTopic = redissonClient.getTopic(cacheConfig.getInvalidationTopic(), StringCodec.INSTANCE);
+        if (!cacheConfig.isLocalEnabled()) {
+            return;
+        }
+        localCache = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getLocalMaxSize())
+                .expireAfterWrite(cacheConfig.getLocalTtlSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        // 消息格式：{发送节点}:{key}
+        listenerId = invalidationTopic.addListener(String.class, (channel, message) -> {
+            int i = message.indexOf(':');
+            if (i > 0 && !nodeId.equals(message.substring(0, i))) {
+                localCache.invalidate(message.substring(i + 1));
+                invalidations.increment();
+            }
+        });
+    }
+
+    /**
+     * 读缓存，没有就加载并写入缓存
+     *
+     * @param key        Redis key
+     * @param ttlSeconds 过期时间（秒），实际会随机加长一点
+     * @param loader     从数据库加载，返回 null 不缓存
+     * @return 缓存的值或者刚加载的值
+     */
+    public <T> T get(String key, long ttlSeconds, Supplier<T> loader) {
+        CacheEntry<T> entry = this.readLocal(key);
+        if (entry == null) {
+            entry = this.read(key);
+        }
+        if (entry != null) {
+            double random = 1 - ThreadLocalRandom.current().nextDouble();
+            if (entry.shouldRefresh(System.currentTimeMillis(), cacheConfig.getEarlyRefreshBeta(), random)) {
+                refreshExecutor.execute(() -> this.load(key, ttlSeconds, loader, true));
+            }
+            return entry.getValue();
+        }
+        return this.load(key, ttlSeconds, loader, false);
+    }
+
+    /**
+     * 直接写入缓存
+     *
+     * @param loadMillis 加载这个值花的时间，影响提前刷新的概率
+     */
+    public void put(String key, Object value, long ttlSeconds, long loadMillis) {
+        if (value == null) {
+            return;
+        }
+        long ttlMillis = this.jitter(ttlSeconds);
+        CacheEntry<Object> entry = new CacheEntry<>(value, System.currentTimeMillis() + ttlMillis, loadMillis);
+        try {
+            // 自己序列化再写入，顺便统计值的大小
+            byte[] rawKey = this.keySerializer().serialize(key);
+            byte[] rawValue = this.valueSerializer().serialize(entry);
+            valueSizeStats.record(key, rawValue.length);
+            redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                    connection.stringCommands().pSetEx(rawKey, ttlMillis, rawValue));
+        } catch (Exception e) {
+            log.error("redis set error, key: {}", key, e);
+        }
+        if (localCache != null) {
+            localCache.put(key, entry);
+        }
+        // 其他节点的本地缓存里可能还是旧值
+        this.publishInvalidation(key);
+    }
+
+    /**
+     * 用一次管道批量写入缓存（预热用），每个 key 的过期时间分别随机加长
+     *
+     * @param values     key -> 值
+     * @param loadMillis 平均每个值的加载时间，影响提前刷新的概率
+     */
+    public void putAll(Map<String, ?> values, long ttlSeconds, long loadMillis) {
+        if (values.isEmpty()) {
+            return;
+        }
+        List<byte[]> rawKeys = new ArrayList<>(values.size());
+        List<byte[]> rawValues = new ArrayList<>(values.size());
+        List<Long> ttls = new ArrayList<>(values.size());
+        long now = System.currentTimeMillis();
+        values.forEach((key, value) -> {
+            if (value == null) {
+                return;
+            }
+            long ttlMillis = this.jitter(ttlSeconds);
+            CacheEntry<Object> entry = new CacheEntry<>(value, now + ttlMillis, loadMillis);
+            byte[] rawValue = this.valueSerializer().serialize(entry);
+            valueSizeStats.record(key, rawValue.length);
+            rawKeys.add(this.keySerializer().serialize(key));
+            rawValues.add(rawValue);
+            ttls.add(ttlMillis);
+            if (localCache != null) {
+                localCache.put(key, entry);
+            }
+        });
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < rawKeys.size(); i++) {
+                    connection.stringCommands().pSetEx(rawKeys.get(i), ttls.get(i), rawValues.get(i));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("redis pipelined set error", e);
+        }
+        values.keySet().forEach(this::publishInvalidation);
+    }
+
+    /**
+     * 删除缓存，所有节点的本地缓存一起失效
+     */
+    public void evict(String key) {
+        if (localCache != null) {
+            localCache.invalidate(key);
+        }
+        try {
+            redisTemplate.delete(key);
+        } catch (Exception e) {
+            log.error("redis delete error, key: {}", key, e);
+        }
+        this.publishInvalidation(key);
+    }
+
+    /**
+     * 本节点的各级命中统计
+     */
+    public CacheStatsVO getStats() {
+        CacheStatsVO cacheStatsVO = new CacheStatsVO();
+        if (localCache != null) {
+            CacheStats stats = localCache.stats();
+            cacheStatsVO.setLocalHitCount(stats.hitCount());
+            cacheStatsVO.setLocalMissCount(stats.missCount());
+            cacheStatsVO.setLocalHitRatio(stats.hitRate());
+            cacheStatsVO.setLocalSize(localCache.estimatedSize());
+        }
+        long hits = redisHits.sum();
+        long misses = redisMisses.sum();
+        cacheStatsVO.setRedisHitCount(hits);
+        cacheStatsVO.setRedisMissCount(misses);
+        cacheStatsVO.setRedisHitRatio(hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+        cacheStatsVO.setLoadCount(loads.sum());
+        cacheStatsVO.setInvalidationCount(invalidations.sum());
+        cacheStatsVO.setValueSizes(valueSizeStats.snapshot());
+        return cacheStatsVO;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerId != null) {
+            invalidationTopic.removeListener(listenerId);
+        }
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * 同一节点内同一个 key 只加载一次，其他请求等待结果
+     *
+     * @param refresh 为 true 表示后台提前刷新：已经有人在加载就直接放弃
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T load(String key, long ttlSeconds, Supplier<T> loader, boolean refresh) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return refresh ? null : this.await(existing, loader);
+        }
+        try {
+            T value = this.loadWithLock(key, ttlSeconds, loader, refresh);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            if (refresh) {
+                log.error("cache refresh error, key: {}", key, e);
+                return null;
+            }
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 多个节点之间用 Redisson 锁保证同一时间只有一个节点加载
+     */
+    private <T> T loadWithLock(String key, long ttlSeconds, Supplier<T> loader, boolean refresh) {
+        RLock lock = redissonClient.getLock(key + ":lock");
+        try {
+            // 提前刷新不等锁，有别的节点在刷新就算了；未命中时最多等 loadWaitMillis，超时就自己查
+            long waitMillis = refresh ? 0 : cacheConfig.getLoadWaitMillis();
+            boolean locked = lock.tryLock(waitMillis, -1, TimeUnit.MILLISECONDS);
+            if (refresh && !locked) {
+                return null;
+            }
+            if (!refresh) {
+                // 等锁的时候别的节点可能已经加载好了
+                CacheEntry<T> entry = this.read(key);
+                if (entry != null) {
+                    return entry.getValue();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            T value = loader.get();
+            loads.increment();
+            this.put(key, value, ttlSeconds, System.currentTimeMillis() - start);
+            return value;
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T await(CompletableFuture<Object> future, Supplier<T> loader) {
+        try {
+            return (T) future.get(cacheConfig.getLoadWaitMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            // 加载太慢，不再等了，自己查
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return loader.get();
+        }
+    }
+
+    /**
+     * 读本地缓存，逻辑上已经过期的当作没有
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CacheEntry<T> readLocal(String key) {
+        if (localCache == null) {
+            return null;
+        }
+        CacheEntry<T> entry = (CacheEntry<T>) localCache.getIfPresent(key);
+        if (entry != null && entry.getExpireAt() <= System.currentTimeMillis()) {
+            localCache.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 读 Redis，命中后放进本地缓存
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CacheEntry<T> read(String key) {
+        Object value;
+        try {
+            value = redisTemplate.opsForValue().get(key);
+        } catch (Exception e) {
+            log.error("redis get error, key: {}", key, e);
+            return null;
+        }
+        if (!(value instanceof CacheEntry)) {
+            redisMisses.increment();
+            return null;
+        }
+        redisHits.increment();
+        CacheEntry<T> entry = (CacheEntry<T>) value;
+        if (localCache != null) {
+            localCache.put(key, entry);
+        }
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<String> keySerializer() {
+        return (RedisSerializer<String>) redisTemplate.getKeySerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> valueSerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+    }
+
+    private void publishInvalidation(String key) {
+        try {
+            invalidationTopic.publish(nodeId + ":" + key);
+        } catch (Exception e) {
+            log.error("publish cache invalidation error, key: {}", key, e);
+        }
+    }
+
+    /**
+     * 过期时间随机加长 [0, ttlJitterRatio) 倍
+     *
+     * @return 毫秒
+     */
+    private long jitter(long ttlSeconds) {
+        long ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        return ttlMillis + (long) (ttlMillis * cacheConfig.getTtlJitterRatio() * ThreadLocalRandom.current().nextDouble());
+    }
+
+}
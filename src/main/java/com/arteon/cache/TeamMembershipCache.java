@@ -0,0 +1,268 @@
+package com.arteon.cache;
+
+import com.arteon.config.TeamConfig;
+import com.arteon.constant.TeamConstant;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 队伍成员关系缓存：每个用户加入的队伍 id 集合、每个队伍的成员 id 集合
+ * <p>
+ * 集合存在 Redis 中，前面可以再加一层本地 Caffeine 缓存。读不到时用调用方传入的方法查数据库再写入 Redis。
+ * 加入、退出、解散队伍时在事务提交后删除相关的集合并把集合的版本号加一，通过 Redis 频道通知其他节点删掉本地缓存。
+ * 加载前先读版本号，写入时版本号变了就放弃：查数据库和提交修改交错时，旧数据不会覆盖修改。
+ * 集合带过期时间，失效丢失（比如 Redis 不可用）时最多过一个 TTL 就会从数据库重新加载。
+ * <p>
+ * 空集合也要缓存（没加入队伍的用户最多），所以每个集合里都放一个占位元素 0，读出来时去掉。
+ */
+@Component
+@Slf4j
+public class TeamMembershipCache {
+
+    /**
+     * 占位元素，id 都是正数，不会和真实的 id 冲突
+     */
+    private static final String PLACEHOLDER = "0";
+
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/team_membership_load.lua");
+
+    private static final DefaultRedisScript<Long> INVALIDATE_SCRIPT = script("lua/team_membership_invalidate.lua");
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private TeamConfig teamConfig;
+
+    /**
+     * 本节点的标识，收到自己发出的失效通知时忽略
+     */
+    private final String nodeId = UUID.randomUUID().toString().replace("-", "");
+
+    /**
+     * 本地缓存：Redis key -> 集合（不可修改），未开启时为 null
+     */
+    private Cache<String, Set<Long>> localCache;
+
+    private RTopic invalidationTopic;
+
+    private Integer listenerId;
+
+    @PostConstruct
+    public void init() {
+        TeamConfig.Membership config = teamConfig.getMembership();
+        if (!config.isEnabled() || !config.isLocalEnabled()) {
+            return;
+        }
+        localCache = Caffeine.newBuilder()
+                .maximumSize(config.getLocalMaxSize())
+                .expireAfterWrite(config.getLocalTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+        invalidationTopic = redissonClient.getTopic(config.getInvalidationTopic(), StringCodec.INSTANCE);
+        // 消息格式：{发送节点}:{key1},{key2}...
+        listenerId = invalidationTopic.addListener(String.class, (channel, message) -> {
+            int i = message.indexOf(':');
+            if (i > 0 && !nodeId.equals(message.substring(0, i))) {
+                localCache.invalidateAll(Arrays.asList(message.substring(i + 1).split(",")));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerId != null) {
+            invalidationTopic.removeListener(listenerId);
+        }
+    }
+
+    /**
+     * 用户加入（包括创建）的队伍 id
+     *
+     * @param loader 从数据库查询
+     */
+    public Set<Long> teamIdsOf(long userId, Supplier<Collection<Long>> loader) {
+        return this.get(userKey(userId), loader);
+    }
+
+    /**
+     * 队伍成员的用户 id
+     *
+     * @param loader 从数据库查询
+     */
+    public Set<Long> memberIdsOf(long teamId, Supplier<Collection<Long>> loader) {
+        return this.get(teamKey(teamId), loader);
+    }
+
+    /**
+     * 用户加入了队伍（事务提交后调用）
+     */
+    public void addMember(long teamId, long userId) {
+        this.invalidate(Arrays.asList(userKey(userId), teamKey(teamId)));
+    }
+
+    /**
+     * 用户退出了队伍（事务提交后调用）
+     */
+    public void removeMember(long teamId, long userId) {
+        this.invalidate(Arrays.asList(userKey(userId), teamKey(teamId)));
+    }
+
+    /**
+     * 队伍解散了：队伍和所有成员的集合都失效（事务提交后调用）
+     */
+    public void removeTeam(long teamId, Collection<Long> memberIds) {
+        List<String> keys = new ArrayList<>();
+        keys.add(teamKey(teamId));
+        for (Long memberId : memberIds) {
+            keys.add(userKey(memberId));
+        }
+        this.invalidate(keys);
+    }
+
+    private Set<Long> get(String key, Supplier<Collection<Long>> loader) {
+        TeamConfig.Membership config = teamConfig.getMembership();
+        if (!config.isEnabled()) {
+            return Collections.unmodifiableSet(new HashSet<>(loader.get()));
+        }
+        if (localCache != null) {
+            Set<Long> ids = localCache.getIfPresent(key);
+            if (ids != null) {
+                return ids;
+            }
+        }
+        Set<Long> ids = null;
+        String version = null;
+        try {
+            Set<String> members = stringRedisTemplate.opsForSet().members(key);
+            if (members != null && !members.isEmpty()) {
+                ids = new HashSet<>();
+                for (String member : members) {
+                    if (!PLACEHOLDER.equals(member)) {
+                        ids.add(Long.parseLong(member));
+                    }
+                }
+            } else {
+                // 查数据库之前记下版本号
+                version = Optional.ofNullable(stringRedisTemplate.opsForValue().get(versionKey(key))).orElse("0");
+            }
+        } catch (Exception e) {
+            log.error("redis get team membership error, key: {}", key, e);
+        }
+        boolean cacheable = true;
+        if (ids == null) {
+            ids = new HashSet<>(loader.get());
+            // 没写进 Redis 说明加载期间被修改过（或者 Redis 不可用），查到的数据不放进本地缓存
+            cacheable = version != null && this.load(key, version, ids, config.getTtlSeconds());
+        }
+        ids = Collections.unmodifiableSet(ids);
+        if (localCache != null && cacheable) {
+            localCache.put(key, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * @return 是否写入了 Redis
+     */
+    private boolean load(String key, String version, Set<Long> ids, long ttlSeconds) {
+        List<String> args = new ArrayList<>(ids.size() + 3);
+        args.add(String.valueOf(ttlSeconds));
+        args.add(version);
+        args.add(PLACEHOLDER);
+        for (Long id : ids) {
+            args.add(String.valueOf(id));
+        }
+        try {
+            Long result = stringRedisTemplate.execute(LOAD_SCRIPT, Arrays.asList(key, versionKey(key)),
+                    args.toArray());
+            return result != null && result == 1;
+        } catch (Exception e) {
+            log.error("redis load team membership error, key: {}", key, e);
+            return false;
+        }
+    }
+
+    private void invalidate(List<String> keys) {
+        if (!teamConfig.getMembership().isEnabled()) {
+            return;
+        }
+        // 版本号要活得比任何一次加载都久，多留一个集合的 TTL
+        String versionTtl = String.valueOf(teamConfig.getMembership().getTtlSeconds() * 2);
+        for (String key : keys) {
+            try {
+                stringRedisTemplate.execute(INVALIDATE_SCRIPT, Arrays.asList(key, versionKey(key)), versionTtl);
+            } catch (Exception e) {
+                log.error("redis invalidate team membership error, key: {}", key, e);
+                this.deleteQuietly(Collections.singletonList(key));
+            }
+        }
+        this.invalidateLocal(keys);
+    }
+
+    private void deleteQuietly(List<String> keys) {
+        try {
+            stringRedisTemplate.delete(keys);
+        } catch (Exception e) {
+            log.error("redis delete team membership error, keys: {}", keys, e);
+        }
+    }
+
+    private void invalidateLocal(List<String> keys) {
+        if (localCache == null) {
+            return;
+        }
+        localCache.invalidateAll(keys);
+        try {
+            invalidationTopic.publish(nodeId + ":" + String.join(",", keys));
+        } catch (Exception e) {
+            log.error("publish team membership invalidation error, keys: {}", keys, e);
+        }
+    }
+
+    private static String userKey(long userId) {
+        return String.format(TeamConstant.MEMBERSHIP_USER_KEY_FORMAT, userId);
+    }
+
+    private static String teamKey(long teamId) {
+        return String.format(TeamConstant.MEMBERSHIP_TEAM_KEY_FORMAT, teamId);
+    }
+
+    private static String versionKey(String key) {
+        return key + TeamConstant.MEMBERSHIP_VERSION_KEY_SUFFIX;
+    }
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.arteon.cache;
+
+import com.arteon.domain.vo.ValueSizeVO;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按 key 前缀统计写入 Redis 的值大小，用来观察序列化格式和压缩的效果
+ */
+@Component
+public class ValueSizeStats {
+
+    /**
+     * 最多统计多少种前缀，防止 key 格式不规范时无限增长
+     */
+    private static final int MAX_PREFIXES = 256;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次写入
+     *
+     * @param key   Redis key
+     * @param bytes 写入的值的字节数
+     */
+    public void record(String key, int bytes) {
+        String prefix = prefixOf(key);
+        Counter counter = counters.get(prefix);
+        if (counter == null) {
+            if (counters.size() >= MAX_PREFIXES) {
+                return;
+            }
+            counter = counters.computeIfAbsent(prefix, p -> new Counter());
+        }
+        counter.count.increment();
+        counter.totalBytes.add(bytes);
+        counter.maxBytes.accumulate(bytes);
+    }
+
+    public List<ValueSizeVO> snapshot() {
+        List<ValueSizeVO> result = new ArrayList<>(counters.size());
+        counters.forEach((prefix, counter) -> {
+            ValueSizeVO valueSizeVO = new ValueSizeVO();
+            valueSizeVO.setPrefix(prefix);
+            long count = counter.count.sum();
+            long totalBytes = counter.totalBytes.sum();
+            valueSizeVO.setCount(count);
+            valueSizeVO.setTotalBytes(totalBytes);
+            valueSizeVO.setAvgBytes(count == 0 ? 0 : totalBytes / count);
+            valueSizeVO.setMaxBytes(counter.maxBytes.get());
+            result.add(valueSizeVO);
+        });
+        return result;
+    }
+
+    /**
+     * key 的前三段，比如 pm:user:recommend:1:1:20 -> pm:user:recommend
+     */
+    static String prefixOf(String key) {
+        int end = -1;
+        for (int i = 0; i < 3; i++) {
+            end = key.indexOf(':', end + 1);
+            if (end < 0) {
+                return key;
+            }
+        }
+        return key.substring(0, end);
+    }
+
+    private static class Counter {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalBytes = new LongAdder();
+
+        private final LongAccumulator maxBytes = new LongAccumulator(Math::max, 0);
+
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.arteon.commons;
+
+/**
+ * 批量匹配任务状态
+ */
+public enum MatchBatchStatusEnum {
+    RUNNING("running", "计算中"),
+    DONE("done", "已完成"),
+    FAILED("failed", "失败（可以继续）");
+
+    private final String value;
+
+    private final String text;
+
+    MatchBatchStatusEnum(String value, String text) {
+        this.value = value;
+        this.text = text;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
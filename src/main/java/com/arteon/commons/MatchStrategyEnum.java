@@ -0,0 +1,39 @@
+package com.arteon.commons;
+
+/**
+ * 用户匹配使用的相似度算法
+ */
+public enum MatchStrategyEnum {
+    EDIT_DISTANCE("edit", "编辑距离"),
+    JACCARD("jaccard", "Jaccard相似度"),
+    COSINE("cosine", "IDF加权余弦相似度");
+
+    private final String value;
+
+    private final String text;
+
+    public static MatchStrategyEnum getEnumByValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (MatchStrategyEnum strategyEnum : MatchStrategyEnum.values()) {
+            if (strategyEnum.getValue().equalsIgnoreCase(value)) {
+                return strategyEnum;
+            }
+        }
+        return null;
+    }
+
+    MatchStrategyEnum(String value, String text) {
+        this.value = value;
+        this.text = text;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,131 @@
+package com.arteon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 通用读穿缓存配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "pm.cache")
+@Data
+public class CacheConfig {
+
+    /**
+     * 推荐用户缓存的过期时间（秒）
+     */
+    private long recommendTtlSeconds = 60;
+
+    /**
+     * 过期时间随机加长的比例，0.2 表示在 [ttl, 1.2 * ttl) 之间随机，避免同时写入的 key 同时过期
+     */
+    private double ttlJitterRatio = 0.2;
+
+    /**
+     * 概率提前刷新的激进程度，越大越早刷新，0 表示不提前刷新
+     */
+    private double earlyRefreshBeta = 1.0;
+
+    /**
+     * 缓存未命中时，等待其他请求（包括其他节点）加载的最长时间（毫秒），超时就自己查数据库
+     */
+    private long loadWaitMillis = 3000;
+
+    /**
+     * 是否在 Redis 前面加一层本地缓存
+     */
+    private boolean localEnabled = true;
+
+    /**
+     * 本地缓存存活时间（秒），收不到失效通知（比如 Redis 连接断开）时最多这么久之后重新读 Redis
+     */
+    private long localTtlSeconds = 10;
+
+    /**
+     * 本地缓存最多缓存的 key 数量
+     */
+    private long localMaxSize = 10000;
+
+    /**
+     * 本地缓存失效通知的 Redis 频道
+     */
+    private String invalidationTopic = "pm:cache:invalidate";
+
+    /**
+     * 缓存预热配置
+     */
+    private Warm warm = new Warm();
+
+    @Data
+    public static class Warm {
+
+        /**
+         * 是否按访问热度预热推荐和匹配缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 预热间隔（秒）
+         */
+        private long intervalSeconds = 10;
+
+        /**
+         * 每次只看最热的多少个查询
+         */
+        private int topN = 200;
+
+        /**
+         * 剩余存活时间少于多少秒的缓存才刷新，不到期的不动
+         */
+        private long refreshAheadSeconds = 15;
+
+        /**
+         * 每批刷新多少个 key（一批的查询 TTL 和写入各走一次管道）
+         */
+        private int batchSize = 50;
+
+        /**
+         * 每次预热后热度乘以这个系数，越小越快忘掉以前的访问
+         */
+        private double decayFactor = 0.95;
+
+        /**
+         * 热度低于这个值就不再统计
+         */
+        private double minScore = 0.05;
+
+        /**
+         * 最多统计多少个查询的热度
+         */
+        private int maxTracked = 10000;
+
+    }
+
+    /**
+     * Redis 值序列化配置
+     */
+    private Serializer serializer = new Serializer();
+
+    @Data
+    public static class Serializer {
+
+        /**
+         * 是否用紧凑二进制格式写入；关闭时写 JDK 序列化格式，两种格式都能读。
+         * 滚动升级时先关闭，所有节点都升级后再打开，避免旧节点读不了新格式
+         */
+        private boolean compactEnabled = true;
+
+        /**
+         * 是否用 LZ4 压缩大的值
+         */
+        private boolean compressEnabled = true;
+
+        /**
+         * 编码后超过多少字节才压缩
+         */
+        private int compressThreshold = 1024;
+
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.arteon.config;
+
+import com.arteon.commons.MatchStrategyEnum;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * 用户匹配相关配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "pm.match")
+@Data
+public class MatchConfig {
+
+    /**
+     * 是否启用内存标签索引，关闭后匹配和按标签搜索都流式扫描数据库
+     */
+    private boolean indexEnabled = true;
+
+    /**
+     * 默认的相似度算法
+     */
+    private MatchStrategyEnum strategy = MatchStrategyEnum.EDIT_DISTANCE;
+
+    /**
+     * 是否开启并行匹配
+     */
+    private boolean parallel = false;
+
+    /**
+     * 并行匹配线程池大小，默认用一半的 CPU，给 Tomcat 工作线程留出余量
+     */
+    private int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * 用户数达到多少才走并行，人少的时候拆任务反而更慢
+     */
+    private int parallelThreshold = 20000;
+
+    /**
+     * 每个分片最多包含的用户数
+     */
+    private int chunkSize = 4096;
+
+    /**
+     * MinHash/LSH 近似匹配配置
+     */
+    private Lsh lsh = new Lsh();
+
+    @Data
+    public static class Lsh {
+
+        /**
+         * 是否开启近似匹配（开启后启动时会额外构建 LSH 索引）
+         */
+        private boolean enabled = false;
+
+        /**
+         * band 数量，越多召回越高、候选越多
+         */
+        private int bands = 20;
+
+        /**
+         * 每个 band 的行数，越多桶越精确、召回越低
+         */
+        private int rows = 3;
+
+        /**
+         * 建索引之后修改过标签的用户超过这个数量，就用内存中最新的快照重建 LSH 索引
+         */
+        private int rebuildThreshold = 4096;
+
+    }
+
+    /**
+     * 用户标签索引快照文件配置
+     */
+    private Snapshot snapshot = new Snapshot();
+
+    @Data
+    public static class Snapshot {
+
+        /**
+         * 是否开启（开启后启动时优先从快照文件加载索引，再补齐快照之后修改过的用户）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 快照文件路径
+         */
+        private String path = "data/user-tag-index.snapshot";
+
+        /**
+         * 定时保存快照的间隔（关闭应用时也会保存一次）
+         */
+        private long saveIntervalSeconds = 600;
+
+    }
+
+    /**
+     * 多节点之间同步用户标签修改的配置
+     */
+    private Sync sync = new Sync();
+
+    @Data
+    public static class Sync {
+
+        /**
+         * 广播标签修改的 Redis 频道，每个节点收到后应用到自己的索引上
+         */
+        private String changeTopic = "pm:match:user-tag-change";
+
+        /**
+         * 每隔多久从数据库补齐一次 updateTime 之后修改过的用户，兜底没收到广播的修改（比如和 Redis 断开期间）
+         */
+        private long catchUpIntervalSeconds = 60;
+
+        /**
+         * 补齐和快照水位线往前留的余量，覆盖 updateTime 写入之后过了一段时间才提交（长事务）的修改
+         */
+        private long catchUpMarginSeconds = 300;
+
+    }
+
+    /**
+     * 批量匹配配置
+     */
+    private Batch batch = new Batch();
+
+    @Data
+    public static class Batch {
+
+        /**
+         * 每一组同时计算的用户数：一组只扫描一遍快照，越大扫描次数越少，但每个候选要和更多查询打分
+         */
+        private int blockSize = 64;
+
+        /**
+         * 任务进度和结果在 Redis 中保留的时间
+         */
+        private long resultTtlHours = 48;
+
+    }
+
+    /**
+     * 匹配结果缓存配置
+     */
+    private Cache cache = new Cache();
+
+    @Data
+    public static class Cache {
+
+        /**
+         * 是否缓存匹配结果
+         */
+        private boolean enabled = true;
+
+        /**
+         * Redis 中结果的最长存活时间（秒），别人改了标签最多这么久之后才能体现在结果里
+         */
+        private long ttlSeconds = 600;
+
+        /**
+         * 是否在 Redis 前面再加一层本地缓存
+         */
+        private boolean localEnabled = true;
+
+        /**
+         * 本地缓存存活时间（秒），兜底没收到的失效通知，要比 Redis 短
+         */
+        private long localTtlSeconds = 60;
+
+        /**
+         * 本地缓存最多缓存多少个用户
+         */
+        private int localMaxSize = 10000;
+
+        /**
+         * 本地缓存失效通知的 Redis 频道
+         */
+        private String invalidationTopic = "pm:match:cache:invalidate";
+
+    }
+
+    /**
+     * 匹配专用的 ForkJoinPool，不和 parallelStream 共用公共池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool matchForkJoinPool() {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("match-worker-" + thread.getPoolIndex());
+            return thread;
+        };
+        return new ForkJoinPool(parallelism, factory, null, false);
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.arteon.config;
 
+import com.arteon.cache.CompactRedisSerializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -13,9 +14,15 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 public class RedisTemplateConfig {
 
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                                       CacheConfig cacheConfig) {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setKeySerializer(RedisSerializer.string());   // 设置序列化器
+        redisTemplate.setHashKeySerializer(RedisSerializer.string());
+        // 值用紧凑二进制格式，比JDK序列化小很多，也能读取以前写入的JDK格式
+        CompactRedisSerializer valueSerializer = new CompactRedisSerializer(cacheConfig.getSerializer());
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashValueSerializer(valueSerializer);
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         return redisTemplate;
     }
@@ -0,0 +1,72 @@
+package com.arteon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 队伍相关配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "pm.team")
+@Data
+public class TeamConfig {
+
+    /**
+     * 加入队伍时等待锁的最长时间（毫秒），超时提示稍后重试
+     */
+    private long joinLockWaitMillis = 3000;
+
+    /**
+     * 是否用 Redis Lua 脚本做加入队伍的准入（不加锁），通过后再写数据库，写失败时归还名额
+     * <p>
+     * 脚本同时操作队伍和用户的 key，不在同一个槽，只能用单机 Redis（或主从、哨兵），Redis Cluster 上会报 CROSSSLOT
+     */
+    private boolean fastJoinEnabled = false;
+
+    /**
+     * 准入计数在 Redis 中的过期时间（秒），过期后从数据库重新加载，和数据库的偏差最多保留这么久
+     */
+    private long admissionTtlSeconds = 3600;
+
+    /**
+     * 成员关系缓存配置
+     */
+    private Membership membership = new Membership();
+
+    @Data
+    public static class Membership {
+
+        /**
+         * 是否缓存成员关系，关闭后每次查数据库
+         */
+        private boolean enabled = true;
+
+        /**
+         * Redis 中成员关系的过期时间（秒），和数据库的偏差最多保留这么久
+         */
+        private long ttlSeconds = 600;
+
+        /**
+         * 是否在 Redis 前面加一层本地缓存
+         */
+        private boolean localEnabled = true;
+
+        /**
+         * 本地缓存存活时间（秒），收不到失效通知时最多这么久之后重新读 Redis
+         */
+        private long localTtlSeconds = 5;
+
+        /**
+         * 本地缓存最多缓存的集合数量
+         */
+        private long localMaxSize = 10000;
+
+        /**
+         * 本地缓存失效通知的 Redis 频道
+         */
+        private String invalidationTopic = "pm:team:membership:invalidate";
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.arteon.constant;
+
+/**
+ * 队伍模块相关的常量
+ */
+public interface TeamConstant {
+
+    /**
+     * 一个用户最多加入（包括创建）的队伍数量
+     */
+    int MAX_JOIN_TEAM_NUM = 5;
+
+    /**
+     * 加入队伍时按队伍加的锁：pm:join_team:team:{teamId}
+     */
+    String JOIN_TEAM_LOCK_FORMAT = "pm:join_team:team:%s";
+
+    /**
+     * 加入队伍时按用户加的锁：pm:join_team:user:{userId}
+     */
+    String JOIN_USER_LOCK_FORMAT = "pm:join_team:user:%s";
+
+    /**
+     * 加入队伍准入：队伍当前人数，pm:team:admission:count:{teamId}
+     */
+    String ADMISSION_TEAM_COUNT_KEY_FORMAT = "pm:team:admission:count:%s";
+
+    /**
+     * 加入队伍准入：队伍成员的用户 id 集合，pm:team:admission:members:{teamId}
+     */
+    String ADMISSION_TEAM_MEMBERS_KEY_FORMAT = "pm:team:admission:members:%s";
+
+    /**
+     * 加入队伍准入：用户加入（包括创建）的队伍数，pm:team:admission:user:{userId}
+     */
+    String ADMISSION_USER_COUNT_KEY_FORMAT = "pm:team:admission:user:%s";
+
+    /**
+     * 成员关系缓存：用户加入（包括创建）的队伍 id 集合，pm:team:membership:user:{userId}
+     * （id 用花括号括起来，和版本号 key 落在 Redis Cluster 的同一个槽）
+     */
+    String MEMBERSHIP_USER_KEY_FORMAT = "pm:team:membership:user:{%s}";
+
+    /**
+     * 成员关系缓存：队伍成员的用户 id 集合，pm:team:membership:team:{teamId}
+     */
+    String MEMBERSHIP_TEAM_KEY_FORMAT = "pm:team:membership:team:{%s}";
+
+    /**
+     * 成员关系集合的版本号：{集合的 key}:version，集合每次失效加一
+     */
+    String MEMBERSHIP_VERSION_KEY_SUFFIX = ":version";
+
+}
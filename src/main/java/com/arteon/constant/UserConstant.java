@@ -20,4 +20,15 @@ public interface UserConstant {
      */
     int ADMIN_ROLE = 1;
 
+    /**
+     * 推荐用户缓存的 Redis Key：pm:user:recommend:{userId}:{pageNum}:{pageSize}
+     */
+    String RECOMMEND_KEY_FORMAT = "pm:user:recommend:%s:%s:%s";
+
+    /**
+     * 游标分页推荐用户缓存的 Redis Key：pm:user:recommend-cursor:{afterId}:{pageSize}
+     * （结果和当前用户无关，所有用户共用同一页的缓存）
+     */
+    String RECOMMEND_CURSOR_KEY_FORMAT = "pm:user:recommend-cursor:%s:%s";
+
 }
@@ -7,6 +7,7 @@ import com.arteon.domain.Team;
 import com.arteon.domain.User;
 import com.arteon.domain.dto.TeamQuery;
 import com.arteon.domain.request.*;
+import com.arteon.domain.vo.CursorPageVO;
 import com.arteon.domain.vo.TeamVO;
 import com.arteon.exception.BusinessException;
 import com.arteon.service.TeamService;
@@ -144,6 +145,23 @@ public class TeamController {
         return ResultUtils.success(resultPage);
     }
 
+    /**
+     * 游标分页查询队伍：按 id 升序取 cursor 之后的 pageSize 个队伍，不查询总数
+     * <p>
+     * 过滤条件和 /list 一样：排除过期的队伍，普通用户不能查私有队伍，返回脱敏后的 TeamVO。
+     *
+     * @param teamQuery 查询条件（只使用 cursor 和 pageSize 分页，不使用 pageNum）
+     * @return 这一页的队伍和下一页的游标
+     */
+    @GetMapping("/list/cursor")
+    public BaseResponse<CursorPageVO<TeamVO>> listTeamsByCursor(TeamQuery teamQuery, HttpServletRequest request) {
+        if (teamQuery == null || teamQuery.getPageSize() <= 0 || teamQuery.getPageSize() > 100) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        User loginUser = userService.getLoginUser(request);
+        return ResultUtils.success(teamService.listTeamByCursor(teamQuery, loginUser));
+    }
+
     @PostMapping("/join")
     public BaseResponse<Boolean> joinTeam(@RequestBody TeamJoinRequest teamJoinRequest, HttpServletRequest request) {
         if (teamJoinRequest == null) {
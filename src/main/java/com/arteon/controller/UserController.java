@@ -1,12 +1,20 @@
 package com.arteon.controller;
 
+import com.arteon.cache.ReadThroughCache;
 import com.arteon.commons.BaseResponse;
 import com.arteon.commons.ErrorCode;
+import com.arteon.commons.MatchStrategyEnum;
 import com.arteon.commons.ResultUtils;
 import com.arteon.domain.User;
+import com.arteon.domain.request.MatchBatchRequest;
 import com.arteon.domain.request.UserLoginRequest;
 import com.arteon.domain.request.UserRegisterRequest;
+import com.arteon.domain.vo.CacheStatsVO;
+import com.arteon.domain.vo.CursorPageVO;
+import com.arteon.domain.vo.MatchBatchJobVO;
+import com.arteon.domain.vo.MatchRecallVO;
 import com.arteon.exception.BusinessException;
+import com.arteon.service.MatchBatchService;
 import com.arteon.service.UserService;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
@@ -35,6 +43,12 @@ public class UserController {
     @Resource
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Resource
+    private MatchBatchService matchBatchService;
+
+    @Resource
+    private ReadThroughCache readThroughCache;
+
     /**
      * 处理用户注册请求
      *
@@ -163,6 +177,22 @@ public class UserController {
         return ResultUtils.success(userPage);
     }
 
+    /**
+     * 推荐页面（游标分页，不查询总数，适合一直往下翻）
+     *
+     * @param cursor   上一页返回的游标，第一页不传
+     * @param pageSize 单页大小
+     * @param request  HTTP请求
+     * @return 这一页的用户和下一页的游标
+     */
+    @GetMapping("recommend/cursor")
+    public BaseResponse<CursorPageVO<User>> recommendUsersByCursor(@RequestParam(required = false) String cursor,
+                                                                   @RequestParam(defaultValue = "20") long pageSize,
+                                                                   HttpServletRequest request) {
+        User loginUser = userService.getLoginUser(request);
+        return ResultUtils.success(userService.recommendUsersByCursor(cursor, pageSize, loginUser));
+    }
+
     /**
      * 处理更新请求
      *
@@ -199,24 +229,123 @@ public class UserController {
         if (id <= 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        boolean b = userService.removeById(id);
+        boolean b = userService.deleteUser(id);
         return ResultUtils.success(b);
     }
 
     /**
-     * 使用编辑距离算法推荐用户
+     * 根据标签相似度推荐用户
      *
-     * @param num     推荐用户的数量
-     * @param request HTTP请求
+     * @param num      推荐用户的数量
+     * @param strategy 相似度算法：edit（编辑距离，默认）、jaccard、cosine，不传使用配置的默认算法
+     * @param request  HTTP请求
      * @return List of User（脱敏）
      */
     @GetMapping("/match")
-    public BaseResponse<List<User>> matchUsers(long num, HttpServletRequest request) {
+    public BaseResponse<List<User>> matchUsers(long num, @RequestParam(required = false) String strategy,
+                                               HttpServletRequest request) {
         if (num <= 0 || num > 20) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        MatchStrategyEnum strategyEnum = null;
+        if (StringUtils.isNotBlank(strategy)) {
+            strategyEnum = MatchStrategyEnum.getEnumByValue(strategy);
+            if (strategyEnum == null) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的匹配算法");
+            }
+        }
         User user = userService.getLoginUser(request);
-        return ResultUtils.success(userService.matchUsers(num, user));
+        return ResultUtils.success(userService.matchUsers(num, strategyEnum, user));
+    }
+
+    /**
+     * 评估近似匹配的召回率（仅管理员）
+     *
+     * @param k          每次匹配返回的用户数
+     * @param sampleSize 抽样的用户数
+     * @param strategy   相似度算法，不传使用配置的默认算法
+     * @param request    HTTP请求
+     * @return 召回率和耗时对比
+     */
+    @GetMapping("/match/recall")
+    public BaseResponse<MatchRecallVO> evaluateMatchRecall(@RequestParam(defaultValue = "10") int k,
+                                                           @RequestParam(defaultValue = "100") int sampleSize,
+                                                           @RequestParam(required = false) String strategy,
+                                                           HttpServletRequest request) {
+        if (!userService.isAdmin(request)) {
+            throw new BusinessException(ErrorCode.NO_AUTH, "缺少管理员权限");
+        }
+        if (k <= 0 || k > 20 || sampleSize <= 0 || sampleSize > 1000) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        MatchStrategyEnum strategyEnum = null;
+        if (StringUtils.isNotBlank(strategy)) {
+            strategyEnum = MatchStrategyEnum.getEnumByValue(strategy);
+            if (strategyEnum == null) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的匹配算法");
+            }
+        }
+        return ResultUtils.success(userService.evaluateMatchRecall(k, sampleSize, strategyEnum));
+    }
+
+    /**
+     * 提交批量匹配任务（仅管理员），结果写入 Redis Hash：field 为用户 id，value 为匹配到的用户 id（逗号分隔的纯文本）
+     *
+     * @param matchBatchRequest 要计算的用户（不传计算所有用户）、K 和相似度算法
+     * @param request           HTTP请求
+     * @return 任务
+     */
+    @PostMapping("/match/batch")
+    public BaseResponse<MatchBatchJobVO> submitMatchBatch(@RequestBody MatchBatchRequest matchBatchRequest,
+                                                          HttpServletRequest request) {
+        if (!userService.isAdmin(request)) {
+            throw new BusinessException(ErrorCode.NO_AUTH, "缺少管理员权限");
+        }
+        return ResultUtils.success(matchBatchService.submit(matchBatchRequest));
+    }
+
+    /**
+     * 查询批量匹配任务的进度（仅管理员）
+     *
+     * @param jobId   任务 id
+     * @param request HTTP请求
+     * @return 任务
+     */
+    @GetMapping("/match/batch/progress")
+    public BaseResponse<MatchBatchJobVO> getMatchBatchProgress(@RequestParam String jobId, HttpServletRequest request) {
+        if (!userService.isAdmin(request)) {
+            throw new BusinessException(ErrorCode.NO_AUTH, "缺少管理员权限");
+        }
+        return ResultUtils.success(matchBatchService.getJob(jobId));
+    }
+
+    /**
+     * 继续执行失败的批量匹配任务（仅管理员）
+     *
+     * @param jobId   任务 id
+     * @param request HTTP请求
+     * @return 任务
+     */
+    @PostMapping("/match/batch/resume")
+    public BaseResponse<MatchBatchJobVO> resumeMatchBatch(@RequestParam String jobId, HttpServletRequest request) {
+        if (!userService.isAdmin(request)) {
+            throw new BusinessException(ErrorCode.NO_AUTH, "缺少管理员权限");
+        }
+        return ResultUtils.success(matchBatchService.resume(jobId));
+    }
+
+    /**
+     * 查看本节点两级缓存的命中率（仅管理员）
+     *
+     * @param request HTTP请求
+     * @return 各级缓存的命中统计
+     */
+    @GetMapping("/cache/stats")
+    public BaseResponse<CacheStatsVO> getCacheStats(HttpServletRequest request) {
+        if (!userService.isAdmin(request)) {
+            throw new BusinessException(ErrorCode.NO_AUTH, "缺少管理员权限");
+        }
+        return ResultUtils.success(readThroughCache.getStats());
     }
 
 }
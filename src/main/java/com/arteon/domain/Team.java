@@ -36,6 +36,11 @@ public class Team implements Serializable {
      */
     private Integer maxNum;
 
+    /**
+     * 当前人数（加入、退出时原子更新）
+     */
+    private Integer memberCount;
+
     /**
      * 过期时间
      */
@@ -0,0 +1,31 @@
+package com.arteon.domain.request;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量匹配请求体
+ */
+@Data
+public class MatchBatchRequest implements Serializable {
+
+    private static final long serialVersionUID = -6310928475519062368L;
+
+    /**
+     * 需要计算的用户 id，不传表示所有有标签的用户
+     */
+    private List<Long> userIds;
+
+    /**
+     * 每个用户返回的匹配数量
+     */
+    private Integer k;
+
+    /**
+     * 相似度算法：edit、jaccard、cosine，不传使用配置的默认算法
+     */
+    private String strategy;
+
+}
@@ -22,4 +22,9 @@ public class PageRequest implements Serializable {
      */
     protected int pageNum = 1;
 
+    /**
+     * 游标分页时上一页返回的游标，第一页不传（游标分页只使用 pageSize，不使用 pageNum）
+     */
+    protected String cursor;
+
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.arteon.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 两级缓存的命中统计（从本节点启动开始累计）
+ */
+@Data
+public class CacheStatsVO implements Serializable {
+
+    private static final long serialVersionUID = 5166323145871287530L;
+
+    /**
+     * 本地缓存命中次数
+     */
+    private long localHitCount;
+
+    /**
+     * 本地缓存未命中次数
+     */
+    private long localMissCount;
+
+    /**
+     * 本地缓存命中率
+     */
+    private double localHitRatio;
+
+    /**
+     * 本地缓存当前的 key 数量（估算）
+     */
+    private long localSize;
+
+    /**
+     * Redis 命中次数（只统计本地缓存未命中后去读 Redis 的请求）
+     */
+    private long redisHitCount;
+
+    /**
+     * Redis 未命中次数
+     */
+    private long redisMissCount;
+
+    /**
+     * Redis 命中率
+     */
+    private double redisHitRatio;
+
+    /**
+     * 查数据库的次数（未命中加载 + 提前刷新）
+     */
+    private long loadCount;
+
+    /**
+     * 收到的其他节点的失效通知次数
+     */
+    private long invalidationCount;
+
+    /**
+     * 按 key 前缀统计的写入值大小
+     */
+    private List<ValueSizeVO> valueSizes;
+
+}
@@ -0,0 +1,31 @@
+package com.arteon.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 游标分页结果：不查询总数，用 nextCursor 取下一页
+ */
+@Data
+public class CursorPageVO<T> implements Serializable {
+
+    private static final long serialVersionUID = 4711470377362133329L;
+
+    /**
+     * 这一页的数据（按 id 升序）
+     */
+    private List<T> records;
+
+    /**
+     * 下一页的游标，原样传回即可；为 null 表示没有下一页了
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+
+}
@@ -0,0 +1,70 @@
+package com.arteon.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 批量匹配任务（进度）
+ */
+@Data
+public class MatchBatchJobVO implements Serializable {
+
+    private static final long serialVersionUID = 2873091934460981517L;
+
+    /**
+     * 任务 id
+     */
+    private String jobId;
+
+    /**
+     * 状态：running、done、failed
+     */
+    private String status;
+
+    /**
+     * 每个用户返回的匹配数量
+     */
+    private int k;
+
+    /**
+     * 相似度算法
+     */
+    private String strategy;
+
+    /**
+     * 是否只计算指定的用户
+     */
+    private boolean specifiedUsers;
+
+    /**
+     * 需要计算的用户数
+     */
+    private long total;
+
+    /**
+     * 已经算完的用户数
+     */
+    private long processed;
+
+    /**
+     * 已经算完的最大用户 id（用户按 id 升序计算，继续执行时从它之后开始）
+     */
+    private long lastUserId;
+
+    /**
+     * 结果所在的 Redis Hash，field 为用户 id，value 为按相似度排好序的用户 id，用逗号分隔（都是纯文本，没有标签的用户为空串）
+     */
+    private String resultKey;
+
+    /**
+     * 失败原因
+     */
+    private String errorMessage;
+
+    private Date createTime;
+
+    private Date updateTime;
+
+}
@@ -0,0 +1,60 @@
+package com.arteon.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 近似匹配召回率评估结果
+ */
+@Data
+public class MatchRecallVO implements Serializable {
+
+    private static final long serialVersionUID = -3021557190913875014L;
+
+    /**
+     * 每次匹配返回的用户数
+     */
+    private int k;
+
+    /**
+     * 抽样的用户数
+     */
+    private int sampleSize;
+
+    /**
+     * LSH band 数量
+     */
+    private int bands;
+
+    /**
+     * LSH 每个 band 的行数
+     */
+    private int rows;
+
+    /**
+     * 平均 Recall@K：近似结果中命中精确结果的比例
+     */
+    private double recall;
+
+    /**
+     * 平均每次需要精确打分的候选数
+     */
+    private double avgCandidates;
+
+    /**
+     * LSH 候选不足 K 个、线上会退回全量精确计算的样本比例（这些样本的召回率和近似耗时仍然只按候选计算）
+     */
+    private double fallbackRate;
+
+    /**
+     * 精确匹配平均耗时（毫秒）
+     */
+    private double exactCostMs;
+
+    /**
+     * 近似匹配平均耗时（毫秒）
+     */
+    private double approximateCostMs;
+
+}
@@ -0,0 +1,40 @@
+package com.arteon.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 一类 Redis key 写入的值大小统计
+ */
+@Data
+public class ValueSizeVO implements Serializable {
+
+    private static final long serialVersionUID = -6645092617218402311L;
+
+    /**
+     * key 前缀（前三段），比如 pm:user:recommend
+     */
+    private String prefix;
+
+    /**
+     * 写入次数
+     */
+    private long count;
+
+    /**
+     * 写入的总字节数（序列化和压缩之后）
+     */
+    private long totalBytes;
+
+    /**
+     * 平均每个值的字节数
+     */
+    private long avgBytes;
+
+    /**
+     * 最大的值的字节数
+     */
+    private long maxBytes;
+
+}
@@ -0,0 +1,47 @@
+package com.arteon.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 用户标签变更事件，在注册、修改标签、删除用户时发布，事务提交后再处理
+ */
+@Getter
+public class UserTagChangeEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 4419537385026151583L;
+
+    /**
+     * 用户id
+     */
+    private final long userId;
+
+    /**
+     * 新的标签列表 json，为 null 表示没有标签
+     */
+    private final String tags;
+
+    /**
+     * 用户是否被删除
+     */
+    private final boolean deleted;
+
+    public UserTagChangeEvent(Object source, long userId, String tags) {
+        this(source, userId, tags, false);
+    }
+
+    private UserTagChangeEvent(Object source, long userId, String tags, boolean deleted) {
+        super(source);
+        this.userId = userId;
+        this.tags = tags;
+        this.deleted = deleted;
+    }
+
+    /**
+     * 用户被删除的事件
+     */
+    public static UserTagChangeEvent deleted(Object source, long userId) {
+        return new UserTagChangeEvent(source, userId, null, true);
+    }
+
+}
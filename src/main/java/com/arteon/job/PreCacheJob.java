@@ -1,29 +1,51 @@
 package com.arteon.job;
 
+import com.arteon.cache.AccessTracker;
+import com.arteon.cache.ReadThroughCache;
+import com.arteon.config.CacheConfig;
 import com.arteon.domain.User;
+import com.arteon.match.MatchResultCache;
 import com.arteon.service.UserService;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import static com.arteon.constant.UserConstant.RECOMMEND_KEY_FORMAT;
+
 /**
  * 缓存预热
+ * <p>
+ * 按访问热度（见 {@link AccessTracker}）挑出最热的查询，只刷新快要过期或已经过期的缓存，
+ * 一批一批地用管道查询剩余存活时间、写入结果。每次预热完把所有热度按比例衰减，不再访问的查询慢慢掉出去。
  */
 @Component
 @Slf4j
 public class PreCacheJob {
 
     @Resource
-    private RedisTemplate<String, Object> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ReadThroughCache readThroughCache;
+
+    @Resource
+    private CacheConfig cacheConfig;
 
     @Resource
     private UserService userService;
@@ -31,37 +53,105 @@ public class PreCacheJob {
     @Resource
     private RedissonClient redissonClient;
 
-    // 为这些重点用户预热缓存
-    private List<Long> mainUserIdList = Arrays.asList(1L);
-
-    @Scheduled(cron = "*/5 * * * * ?")  // 每五秒触发一次（实际上线项目不需要这么频繁，这里为了看到效果）
-    public void cacheRecommendUsers() {
+    @Scheduled(initialDelayString = "${pm.cache.warm.interval-seconds:10}",
+            fixedDelayString = "${pm.cache.warm.interval-seconds:10}", timeUnit = TimeUnit.SECONDS)
+    public void cacheHotQueries() {
+        CacheConfig.Warm config = cacheConfig.getWarm();
+        if (!config.isEnabled()) {
+            return;
+        }
         // 获取锁
         RLock lock = redissonClient.getLock("pm:precachejob:docache:lock");// redis key推荐命名方法
         // 上锁
         try {
             if (lock.tryLock(0, -1, TimeUnit.SECONDS)) {  // 上锁一定要设置有效期，设为-1默认是30秒
-                // Thread.sleep(30000);  // 模拟方法执行时间很长，看看Redisson的看门狗机制
-                for (Long userId : mainUserIdList) {
-                    // 从数据库中查数据、
-                    Page<User> userPage = userService.page(new Page<>(1, 20));  // 暂时写第1页20条数据
-                    String redisKey = String.format("pm:user:recommend:%s", userId);
-                    try {
-                        redisTemplate.opsForValue().set(redisKey, userPage, 60, TimeUnit.SECONDS);
-                    } catch (Exception e) {
-                        log.error("redis set key error", e);
+                Set<String> members = stringRedisTemplate.opsForZSet()
+                        .reverseRange(AccessTracker.HOT_KEY, 0, config.getTopN() - 1);
+                List<AccessTracker.HotQuery> hotQueries = new ArrayList<>();
+                for (String member : members == null ? Collections.<String>emptySet() : members) {
+                    AccessTracker.HotQuery hotQuery = AccessTracker.HotQuery.parse(member);
+                    if (hotQuery != null) {
+                        hotQueries.add(hotQuery);
                     }
                 }
+                for (int from = 0; from < hotQueries.size(); from += config.getBatchSize()) {
+                    this.refreshBatch(hotQueries.subList(from, Math.min(from + config.getBatchSize(), hotQueries.size())));
+                }
+                this.decay(config);
             }
         } catch (InterruptedException e) {
-            log.error("cacheRecommendUsers error", e);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("cacheHotQueries error", e);
         } finally {
             // 解锁一定要写在finally块中，否则一旦出现异常就会导致死锁
             if (lock.isHeldByCurrentThread()) {  // Redisson提供了现成的方法判断锁是不是自己的，底层是通过线程id区分
                 lock.unlock();
             }
         }
+    }
+
+    /**
+     * 刷新一批查询中快要过期的缓存
+     */
+    private void refreshBatch(List<AccessTracker.HotQuery> batch) {
+        List<String> keys = new ArrayList<>(batch.size());
+        for (AccessTracker.HotQuery hotQuery : batch) {
+            keys.add(hotQuery.isRecommend()
+                    ? String.format(RECOMMEND_KEY_FORMAT, hotQuery.getUserId(), hotQuery.getPageNum(), hotQuery.getSize())
+                    : MatchResultCache.keyOf(hotQuery.getUserId()));
+        }
+        // 一次管道查询这一批 key 的剩余存活时间（毫秒，-2 表示不存在）
+        List<Object> ttls = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String key : keys) {
+                stringConnection.pTtl(key);
+            }
+            return null;
+        });
+        long refreshAheadMillis = TimeUnit.SECONDS.toMillis(cacheConfig.getWarm().getRefreshAheadSeconds());
+        Map<String, Object> recommendValues = new HashMap<>();
+        // 推荐结果和用户无关，同一页只查一次数据库
+        Map<String, Page<User>> pages = new HashMap<>();
+        long loadMillis = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            AccessTracker.HotQuery hotQuery = batch.get(i);
+            long ttl = ((Number) ttls.get(i)).longValue();
+            if (hotQuery.isRecommend()) {
+                // 没有设置过期时间（-1）的不管
+                if (ttl == -1 || ttl > refreshAheadMillis) {
+                    continue;
+                }
+                String pageKey = hotQuery.getPageNum() + ":" + hotQuery.getSize();
+                Page<User> userPage = pages.get(pageKey);
+                if (userPage == null) {
+                    long start = System.currentTimeMillis();
+                    userPage = userService.page(new Page<>(hotQuery.getPageNum(), hotQuery.getSize()));
+                    loadMillis = Math.max(loadMillis, System.currentTimeMillis() - start);
+                    pages.put(pageKey, userPage);
+                }
+                recommendValues.put(keys.get(i), userPage);
+            } else if (ttl == -2) {
+                // 匹配结果的过期时间从第一次写入开始算，不能续期，只在过期之后重新算好放回去
+                try {
+                    userService.refreshMatchCache(hotQuery.getUserId(), (int) hotQuery.getSize(), hotQuery.getStrategyEnum());
+                } catch (Exception e) {
+                    log.error("refresh match cache error, userId: {}", hotQuery.getUserId(), e);
+                }
+            }
+        }
+        readThroughCache.putAll(recommendValues, cacheConfig.getRecommendTtlSeconds(), loadMillis);
+    }
 
+    /**
+     * 所有热度乘以衰减系数，去掉太冷的和超出数量上限的
+     */
+    private void decay(CacheConfig.Warm config) {
+        String key = AccessTracker.HOT_KEY;
+        stringRedisTemplate.opsForZSet().unionAndStore(key, Collections.emptyList(), key,
+                RedisZSetCommands.Aggregate.SUM, RedisZSetCommands.Weights.of(config.getDecayFactor()));
+        stringRedisTemplate.opsForZSet().removeRangeByScore(key, Double.NEGATIVE_INFINITY, config.getMinScore());
+        stringRedisTemplate.opsForZSet().removeRange(key, 0, -config.getMaxTracked() - 1L);
     }
 
 }
@@ -0,0 +1,51 @@
+package com.arteon.job;
+
+import com.arteon.mapper.TeamMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时校正队伍人数
+ * <p>
+ * team.memberCount 在加入、退出时和 user_team 在同一个事务中修改，正常情况下不会出错；
+ * 直接改数据库、或者以前的代码留下的不一致，由这里按 user_team 表重新统计后修正。
+ */
+@Component
+@Slf4j
+public class TeamMemberCountJob {
+
+    @Resource
+    private TeamMapper teamMapper;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Scheduled(cron = "0 30 4 * * ?")  // 每天凌晨4点半执行，避开访问高峰
+    public void reconcileMemberCount() {
+        RLock lock = redissonClient.getLock("pm:team:member_count:reconcile:lock");
+        try {
+            // 多个节点只需要一个执行
+            if (lock.tryLock(0, -1, TimeUnit.SECONDS)) {
+                int fixed = teamMapper.reconcileMemberCount();
+                if (fixed > 0) {
+                    log.warn("team member count drift fixed, teams: {}", fixed);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("reconcile team member count error", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.arteon.job;
+
+import com.arteon.domain.User;
+import com.arteon.service.UserService;
+import com.arteon.service.UserTagService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 user.tags 中的历史数据回填到 user_tag 关系表（一次性任务）
+ * <p>
+ * 配置 pm.user-tag.backfill=true 后启动时执行，按 id 分批扫描，重复执行不会产生重复数据。
+ */
+@Component
+@Slf4j
+public class UserTagBackfillJob {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Resource
+    private UserService userService;
+
+    @Resource
+    private UserTagService userTagService;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Value("${pm.user-tag.backfill:false}")
+    private boolean backfill;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillUserTags() {
+        if (!backfill) {
+            return;
+        }
+        // 多个实例同时启动时只让一个执行
+        RLock lock = redissonClient.getLock("pm:usertag:backfill:lock");
+        try {
+            if (!lock.tryLock(0, -1, TimeUnit.SECONDS)) {
+                return;
+            }
+            long lastId = 0;
+            long userNum = 0;
+            long relationNum = 0;
+            while (true) {
+                // 按 id 翻页，不用 offset，越往后也不会变慢
+                QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+                queryWrapper.select("id", "tags");
+                queryWrapper.gt("id", lastId);
+                queryWrapper.isNotNull("tags");
+                queryWrapper.orderByAsc("id");
+                queryWrapper.last("limit " + BATCH_SIZE);
+                List<User> userList = userService.list(queryWrapper);
+                if (userList.isEmpty()) {
+                    break;
+                }
+                Map<Long, String> userTagsMap = new LinkedHashMap<>();
+                for (User user : userList) {
+                    userTagsMap.put(user.getId(), user.getTags());
+                }
+                relationNum += userTagService.insertUserTags(userTagsMap);
+                userNum += userList.size();
+                lastId = userList.get(userList.size() - 1).getId();
+            }
+            log.info("user tag backfill finished, users: {}, relations: {}", userNum, relationNum);
+        } catch (InterruptedException e) {
+            log.error("backfillUserTags error", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
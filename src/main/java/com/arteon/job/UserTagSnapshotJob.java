@@ -0,0 +1,26 @@
+package com.arteon.job;
+
+import com.arteon.match.UserTagIndex;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时保存用户标签索引快照，重启时从快照恢复，只需要补齐最近修改过的用户
+ */
+@Component
+public class UserTagSnapshotJob {
+
+    @Resource
+    private UserTagIndex userTagIndex;
+
+    @Scheduled(initialDelayString = "${pm.match.snapshot.save-interval-seconds:600}",
+            fixedDelayString = "${pm.match.snapshot.save-interval-seconds:600}", timeUnit = TimeUnit.SECONDS)
+    public void saveSnapshot() {
+        // 每个节点保存自己的本地文件，不需要分布式锁
+        userTagIndex.saveSnapshot();
+    }
+
+}
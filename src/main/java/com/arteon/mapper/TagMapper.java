@@ -0,0 +1,19 @@
+package com.arteon.mapper;
+
+import com.arteon.domain.Tag;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+
+public interface TagMapper extends BaseMapper<Tag> {
+
+    /**
+     * 批量插入标签，已存在的标签忽略
+     *
+     * @param tagNameList 标签名
+     * @return 实际插入的行数
+     */
+    int insertIgnoreBatch(@Param("tagNameList") Collection<String> tagNameList);
+
+}
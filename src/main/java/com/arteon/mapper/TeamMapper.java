@@ -2,12 +2,32 @@ package com.arteon.mapper;
 
 import com.arteon.domain.Team;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
 
 
 public interface TeamMapper extends BaseMapper<Team> {
 
-}
-
-
-
+    /**
+     * 队伍人数加一，队伍已满时不修改（一条 UPDATE 完成判断和修改，并发加入也不会超员）
+     *
+     * @param teamId 队伍 id
+     * @return 1-加入成功，0-队伍已满或不存在
+     */
+    int incrementMemberCount(@Param("teamId") long teamId);
+
+    /**
+     * 队伍人数减一
+     *
+     * @param teamId 队伍 id
+     * @return 修改的行数
+     */
+    int decrementMemberCount(@Param("teamId") long teamId);
+
+    /**
+     * 按 user_team 表重新统计所有队伍的人数，修正不一致的队伍
+     *
+     * @return 修正的队伍数
+     */
+    int reconcileMemberCount();
 
+}
@@ -2,11 +2,51 @@ package com.arteon.mapper;
 
 import com.arteon.domain.User;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.Date;
+import java.util.List;
 
 public interface UserMapper extends BaseMapper<User> {
 
-}
+    /**
+     * 查询拥有全部标签的用户（走 user_tag 表的索引，GROUP BY + HAVING 实现）
+     *
+     * @param tagNameList 标签名，不能有重复（不区分大小写，和 tag.tagName 的比较规则一致）
+     * @param tagCount    标签个数，和命中的不同标签数比较
+     * @return List of User
+     */
+    List<User> listUsersByAllTags(@Param("tagNameList") List<String> tagNameList, @Param("tagCount") int tagCount);
 
+    /**
+     * 流式扫描所有有标签的用户（只查 id 和 tags，按 id 升序）
+     * <p>
+     * MySQL 驱动按行返回结果，每行交给 resultHandler 处理后即可丢弃，内存占用和用户总数无关。
+     * 处理过程中不能用同一个连接执行其他查询。
+     *
+     * @param resultHandler 逐行处理
+     */
+    void scanUserTags(ResultHandler<User> resultHandler);
 
+    /**
+     * 流式扫描 updateTime 不早于指定时间的用户（包括已删除的，只查 id、tags、isDelete，按 id 升序）
+     *
+     * @param updateTime    起始更新时间
+     * @param resultHandler 逐行处理
+     */
+    void scanUserTagsUpdatedSince(@Param("updateTime") Date updateTime, ResultHandler<User> resultHandler);
 
+    /**
+     * 查询数据库的当前时间（和 updateTime 使用同一个时钟）
+     */
+    Date selectNow();
 
+    /**
+     * 在当前事务中锁住用户行（select ... for update），同一个用户的并发写操作在数据库中串行
+     *
+     * @return 用户 id，用户不存在返回 null
+     */
+    Long lockUser(@Param("userId") long userId);
+
+}
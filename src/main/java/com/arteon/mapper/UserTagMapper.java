@@ -0,0 +1,19 @@
+package com.arteon.mapper;
+
+import com.arteon.domain.UserTag;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+public interface UserTagMapper extends BaseMapper<UserTag> {
+
+    /**
+     * 批量插入用户标签关系，重复的关系忽略
+     *
+     * @param userTagList 用户标签关系
+     * @return 实际插入的行数
+     */
+    int insertIgnoreBatch(@Param("userTagList") List<UserTag> userTagList);
+
+}
@@ -0,0 +1,460 @@
+package com.arteon.match;
+
+import com.arteon.commons.MatchStrategyEnum;
+import com.arteon.config.MatchConfig;
+import com.arteon.domain.vo.MatchRecallVO;
+import com.arteon.utils.EditDistanceSimilarity;
+import com.arteon.utils.IdfCosineSimilarity;
+import com.arteon.utils.JaccardSimilarity;
+import com.arteon.utils.ReusableTagVector;
+import com.arteon.utils.SimilarityStrategy;
+import com.arteon.utils.TagVector;
+import com.arteon.utils.TopKHeap;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 用户匹配引擎：扫描标签索引快照，计算与查询标签最相似的前 K 个用户
+ * <p>
+ * 相似度算法可以按请求指定，也可以通过 pm.match.strategy 配置默认值。
+ * 开启 pm.match.lsh.enabled 后可以走 MinHash/LSH 近似匹配，只对候选打分。
+ * 快照会随着用户修改标签不断更新，每次计算使用调用方传入的那一份，计算过程中不受更新影响。
+ * <p>
+ * 人少时在请求线程上串行计算；开启并行且人数超过阈值时，把用户切成分片交给专用的 ForkJoinPool，
+ * 每个分片维护自己的 Top-K，最后逐级合并。
+ */
+@Component
+public class MatchEngine {
+
+    @Resource
+    private MatchConfig matchConfig;
+
+    @Resource
+    private ForkJoinPool matchForkJoinPool;
+
+    /**
+     * 计算最相似的前 K 个用户
+     *
+     * @param snapshot      标签索引快照
+     * @param queryTags     查询的标签
+     * @param excludeUserId 需要排除的用户（一般是自己）
+     * @param k             返回的用户数量
+     * @param strategyEnum  相似度算法，为 null 时使用配置的默认算法
+     * @return 用户 id，按相似度从高到低排序
+     */
+    public long[] topK(UserTagSnapshot snapshot, TagVector queryTags, long excludeUserId, int k,
+                       MatchStrategyEnum strategyEnum) {
+        SimilarityStrategy strategy = this.getStrategy(strategyEnum, snapshot).forQuery(queryTags);
+        TopKHeap topKHeap;
+        if (matchConfig.isParallel() && snapshot.size() >= matchConfig.getParallelThreshold()) {
+            int chunkSize = Math.max(1, matchConfig.getChunkSize());
+            topKHeap = matchForkJoinPool.invoke(
+                    new ScoreTask(snapshot, queryTags, excludeUserId, k, strategy, 0, snapshot.size(), chunkSize));
+        } else {
+            topKHeap = new TopKHeap(k);
+            score(snapshot, queryTags, excludeUserId, strategy, 0, snapshot.size(), topKHeap);
+        }
+        return topKHeap.sortedIds();
+    }
+
+    /**
+     * 批量计算一组用户各自最相似的前 K 个用户：只扫描一遍快照，每个候选的标签解码一次后和这一组的所有查询逐个打分
+     * <p>
+     * 候选数据只读一次并且在缓存中停留到这一组都算完，比逐个用户调用 {@link #topK} 少扫描 queries.length - 1 遍。
+     *
+     * @param snapshot       标签索引快照
+     * @param queryTags      每个查询的标签，为 null 或没有标签的查询结果为空
+     * @param excludeUserIds 每个查询需要排除的用户（一般是查询用户自己）
+     * @param k              每个查询返回的用户数量
+     * @param strategyEnum   相似度算法，为 null 时使用配置的默认算法
+     * @return 每个查询的用户 id，按相似度从高到低排序
+     */
+    public long[][] topKBlock(UserTagSnapshot snapshot, TagVector[] queryTags, long[] excludeUserIds, int k,
+                              MatchStrategyEnum strategyEnum) {
+        SimilarityStrategy strategy = this.getStrategy(strategyEnum, snapshot);
+        TopKHeap[] heaps;
+        if (matchConfig.isParallel() && snapshot.size() >= matchConfig.getParallelThreshold()) {
+            int chunkSize = Math.max(1, matchConfig.getChunkSize());
+            heaps = matchForkJoinPool.invoke(new BlockScoreTask(snapshot, queryTags, excludeUserIds, k, strategy,
+                    0, snapshot.size(), chunkSize));
+        } else {
+            heaps = newHeaps(queryTags.length, k);
+            scoreBlock(snapshot, queryTags, excludeUserIds, strategy, 0, snapshot.size(), heaps);
+        }
+        long[][] result = new long[heaps.length][];
+        for (int q = 0; q < heaps.length; q++) {
+            result[q] = heaps[q].sortedIds();
+        }
+        return result;
+    }
+
+    /**
+     * 近似计算最相似的前 K 个用户：只对 LSH 同桶的候选和建索引之后修改过标签的用户精确打分
+     * <p>
+     * 候选不足 K 个时（比如当前用户的标签很冷门），退回全量精确计算。
+     *
+     * @param snapshot      最新的标签索引快照，打分用它里面的标签
+     * @param lshIndex      LSH 索引（可能是用较早的快照建的）
+     * @param queryTags     查询的标签
+     * @param excludeUserId 需要排除的用户（一般是自己）
+     * @param k             返回的用户数量
+     * @param strategyEnum  相似度算法，为 null 时使用配置的默认算法
+     * @return 用户 id，按相似度从高到低排序
+     */
+    public long[] topKApproximate(UserTagSnapshot snapshot, MinHashLshIndex lshIndex, TagVector queryTags,
+                                  long excludeUserId, int k, MatchStrategyEnum strategyEnum) {
+        TopKHeap topKHeap = this.scoreCandidates(snapshot, lshIndex, queryTags, excludeUserId, k, strategyEnum);
+        if (!topKHeap.isFull()) {
+            return this.topK(snapshot, queryTags, excludeUserId, k, strategyEnum);
+        }
+        return topKHeap.sortedIds();
+    }
+
+    /**
+     * 评估近似匹配的召回率：随机抽取有标签的用户，分别用精确和近似两种方式匹配，对比结果
+     * <p>
+     * 近似结果只看 LSH 候选的打分结果，不走候选不足时退回全量计算的逻辑，否则退回的样本召回率都是 1，
+     * 耗时也是全量扫描，会让 bands/rows 看起来比实际好。候选不足 K 个的比例单独统计。
+     *
+     * @param snapshot     最新的标签索引快照
+     * @param lshIndex     LSH 索引
+     * @param k            每次匹配返回的用户数
+     * @param sampleSize   抽样的用户数
+     * @param strategyEnum 相似度算法，为 null 时使用配置的默认算法
+     */
+    public MatchRecallVO evaluateRecall(UserTagSnapshot snapshot, MinHashLshIndex lshIndex, int k, int sampleSize,
+                                        MatchStrategyEnum strategyEnum) {
+        Random random = new Random(sampleSize);
+        double recallSum = 0;
+        long candidateSum = 0;
+        long exactNanos = 0;
+        long approximateNanos = 0;
+        int fallbacks = 0;
+        int sampled = 0;
+        for (int attempt = 0; attempt < sampleSize * 10 && sampled < sampleSize && snapshot.size() > 0; attempt++) {
+            int i = random.nextInt(snapshot.size());
+            TagVector queryTags = snapshot.tagsAt(i);
+            long userId = snapshot.userIdAt(i);
+            if (queryTags.isEmpty()) {
+                continue;
+            }
+            long start = System.nanoTime();
+            long[] exact = this.topK(snapshot, queryTags, userId, k, strategyEnum);
+            exactNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            TopKHeap candidateHeap = this.scoreCandidates(snapshot, lshIndex, queryTags, userId, k, strategyEnum);
+            long[] approximate = candidateHeap.sortedIds();
+            approximateNanos += System.nanoTime() - start;
+            // 候选数在计时之外统计，不算进近似匹配的耗时
+            candidateSum += lshIndex.candidates(queryTags).cardinality() + lshIndex.getChangedUserIds().length;
+            if (exact.length == 0) {
+                continue;
+            }
+            if (!candidateHeap.isFull()) {
+                // 线上这种情况会退回全量计算
+                fallbacks++;
+            }
+            Set<Long> exactSet = new HashSet<>();
+            for (long id : exact) {
+                exactSet.add(id);
+            }
+            int hit = 0;
+            for (long id : approximate) {
+                if (exactSet.contains(id)) {
+                    hit++;
+                }
+            }
+            recallSum += (double) hit / exact.length;
+            sampled++;
+        }
+        MatchRecallVO matchRecallVO = new MatchRecallVO();
+        matchRecallVO.setK(k);
+        matchRecallVO.setSampleSize(sampled);
+        matchRecallVO.setBands(lshIndex.getBands());
+        matchRecallVO.setRows(lshIndex.getRows());
+        if (sampled > 0) {
+            matchRecallVO.setRecall(recallSum / sampled);
+            matchRecallVO.setAvgCandidates((double) candidateSum / sampled);
+            matchRecallVO.setFallbackRate((double) fallbacks / sampled);
+            matchRecallVO.setExactCostMs(exactNanos / 1e6 / sampled);
+            matchRecallVO.setApproximateCostMs(approximateNanos / 1e6 / sampled);
+        }
+        return matchRecallVO;
+    }
+
+    /**
+     * 对 LSH 候选精确打分
+     * <p>
+     * 桶里的用户用建索引时的下标表示，换算成 id 后到最新快照中取标签；
+     * 修改过标签的用户不看桶，全部按最新标签打分，已经删除的用户在最新快照中找不到，直接跳过。
+     */
+    private TopKHeap scoreCandidates(UserTagSnapshot snapshot, MinHashLshIndex lshIndex, TagVector queryTags,
+                                     long excludeUserId, int k, MatchStrategyEnum strategyEnum) {
+        UserTagSnapshot lshSnapshot = lshIndex.getSnapshot();
+        // 索引就是用最新快照建的，下标可以直接用
+        boolean current = lshSnapshot == snapshot;
+        SimilarityStrategy strategy = this.getStrategy(strategyEnum, snapshot).forQuery(queryTags);
+        BitSet candidates = lshIndex.candidates(queryTags);
+        TopKHeap topKHeap = new TopKHeap(k);
+        ReusableTagVector userTags = new ReusableTagVector();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            long userId = lshSnapshot.userIdAt(i);
+            if (userId == excludeUserId || (!current && lshIndex.isChanged(userId))) {
+                continue;
+            }
+            offer(topKHeap, strategy, queryTags, userId, current ? i : snapshot.indexOf(userId), snapshot, userTags);
+        }
+        for (long userId : lshIndex.getChangedUserIds()) {
+            if (userId != excludeUserId) {
+                offer(topKHeap, strategy, queryTags, userId, snapshot.indexOf(userId), snapshot, userTags);
+            }
+        }
+        return topKHeap;
+    }
+
+    /**
+     * 对快照中下标为 index 的用户打分
+     *
+     * @param index 用户在快照中的下标，为 -1 表示用户已经不在索引中
+     */
+    private static void offer(TopKHeap topKHeap, SimilarityStrategy strategy, TagVector queryTags, long userId,
+                              int index, UserTagSnapshot snapshot, ReusableTagVector userTags) {
+        if (index < 0 || snapshot.loadTags(index, userTags).isEmpty()) {
+            return;
+        }
+        double bound = topKHeap.cutoff();
+        double distance = strategy.distance(userTags, index, queryTags, bound);
+        if (distance <= bound) {
+            topKHeap.offer(userId, distance);
+        }
+    }
+
+    /**
+     * 获取相似度算法的实现
+     *
+     * @param strategyEnum 相似度算法，为 null 时使用配置的默认算法
+     * @param snapshot     标签索引快照，提供 IDF 权重；为 null 时所有标签权重相同
+     */
+    public SimilarityStrategy getStrategy(MatchStrategyEnum strategyEnum, UserTagSnapshot snapshot) {
+        if (strategyEnum == null) {
+            strategyEnum = matchConfig.getStrategy();
+        }
+        switch (strategyEnum) {
+            case JACCARD:
+                return JaccardSimilarity.INSTANCE;
+            case COSINE:
+                // 发布的快照都已经算好了模长，其他快照（比如测试里直接构造的）按候选逐个计算
+                return snapshot == null ? new IdfCosineSimilarity(null, 1)
+                        : new IdfCosineSimilarity(snapshot.getIdf(), snapshot.getUnknownIdf(),
+                        snapshot.getIdfSquaredNorms());
+            case EDIT_DISTANCE:
+            default:
+                return EditDistanceSimilarity.INSTANCE;
+        }
+    }
+
+    /**
+     * 计算 [from, to) 范围内的用户，结果放进 topKHeap
+     */
+    private static void score(UserTagSnapshot snapshot, TagVector queryTags, long excludeUserId,
+                              SimilarityStrategy strategy, int from, int to, TopKHeap topKHeap) {
+        if (from >= to) {
+            return;
+        }
+        // 按段顺序扫描堆外的列式存储，所有用户共用一个可复用的标签向量，扫描过程中不分配对象
+        ReusableTagVector userTags = new ReusableTagVector();
+        for (int s = snapshot.segmentOf(from); s < snapshot.segmentCount(); s++) {
+            int start = snapshot.segmentStart(s);
+            if (start >= to) {
+                return;
+            }
+            TagColumns segment = snapshot.segment(s);
+            int end = Math.min(segment.size(), to - start);
+            for (int i = Math.max(0, from - start); i < end; i++) {
+                long userId = segment.userIdAt(i);
+                if (userId == excludeUserId) {
+                    continue;
+                }
+                segment.loadTags(i, userTags);
+                if (userTags.isEmpty()) {
+                    continue;
+                }
+                // 以堆当前的淘汰线作为剪枝上界，超过上界的候选算到一半就会放弃
+                double bound = topKHeap.cutoff();
+                double distance = strategy.distance(userTags, start + i, queryTags, bound);
+                if (distance <= bound) {
+                    topKHeap.offer(userId, distance);
+                }
+            }
+        }
+    }
+
+    private static TopKHeap[] newHeaps(int n, int k) {
+        TopKHeap[] heaps = new TopKHeap[n];
+        for (int q = 0; q < n; q++) {
+            heaps[q] = new TopKHeap(k);
+        }
+        return heaps;
+    }
+
+    /**
+     * 批量计算 [from, to) 范围内的用户，heaps[q] 为第 q 个查询的结果
+     */
+    private static void scoreBlock(UserTagSnapshot snapshot, TagVector[] queryTags, long[] excludeUserIds,
+                                   SimilarityStrategy strategy, int from, int to, TopKHeap[] heaps) {
+        if (from >= to) {
+            return;
+        }
+        // 每个查询各自准备一次，查询相关的结果在这一段里复用
+        SimilarityStrategy[] strategies = new SimilarityStrategy[queryTags.length];
+        for (int q = 0; q < queryTags.length; q++) {
+            strategies[q] = queryTags[q] == null ? strategy : strategy.forQuery(queryTags[q]);
+        }
+        ReusableTagVector userTags = new ReusableTagVector();
+        for (int s = snapshot.segmentOf(from); s < snapshot.segmentCount(); s++) {
+            int start = snapshot.segmentStart(s);
+            if (start >= to) {
+                return;
+            }
+            TagColumns segment = snapshot.segment(s);
+            int end = Math.min(segment.size(), to - start);
+            for (int i = Math.max(0, from - start); i < end; i++) {
+                if (segment.loadTags(i, userTags).isEmpty()) {
+                    continue;
+                }
+                long userId = segment.userIdAt(i);
+                for (int q = 0; q < queryTags.length; q++) {
+                    TagVector query = queryTags[q];
+                    if (query == null || query.isEmpty() || userId == excludeUserIds[q]) {
+                        continue;
+                    }
+                    TopKHeap topKHeap = heaps[q];
+                    double bound = topKHeap.cutoff();
+                    double distance = strategies[q].distance(userTags, start + i, query, bound);
+                    if (distance <= bound) {
+                        topKHeap.offer(userId, distance);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 批量计算的分片任务，和 {@link ScoreTask} 一样一分为二，合并时逐个查询合并 Top-K
+     */
+    private static class BlockScoreTask extends RecursiveTask<TopKHeap[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final UserTagSnapshot snapshot;
+
+        private final TagVector[] queryTags;
+
+        private final long[] excludeUserIds;
+
+        private final int k;
+
+        private final SimilarityStrategy strategy;
+
+        private final int from;
+
+        private final int to;
+
+        private final int chunkSize;
+
+        BlockScoreTask(UserTagSnapshot snapshot, TagVector[] queryTags, long[] excludeUserIds, int k,
+                       SimilarityStrategy strategy, int from, int to, int chunkSize) {
+            this.snapshot = snapshot;
+            this.queryTags = queryTags;
+            this.excludeUserIds = excludeUserIds;
+            this.k = k;
+            this.strategy = strategy;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected TopKHeap[] compute() {
+            if (to - from <= chunkSize) {
+                TopKHeap[] heaps = newHeaps(queryTags.length, k);
+                scoreBlock(snapshot, queryTags, excludeUserIds, strategy, from, to, heaps);
+                return heaps;
+            }
+            int mid = (from + to) >>> 1;
+            BlockScoreTask left = new BlockScoreTask(snapshot, queryTags, excludeUserIds, k, strategy,
+                    from, mid, chunkSize);
+            BlockScoreTask right = new BlockScoreTask(snapshot, queryTags, excludeUserIds, k, strategy,
+                    mid, to, chunkSize);
+            left.fork();
+            TopKHeap[] result = right.compute();
+            TopKHeap[] leftResult = left.join();
+            for (int q = 0; q < result.length; q++) {
+                result[q].merge(leftResult[q]);
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * 分片计算任务，范围足够小时直接计算，否则一分为二
+     */
+    private static class ScoreTask extends RecursiveTask<TopKHeap> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final UserTagSnapshot snapshot;
+
+        private final TagVector queryTags;
+
+        private final long excludeUserId;
+
+        private final int k;
+
+        private final SimilarityStrategy strategy;
+
+        private final int from;
+
+        private final int to;
+
+        private final int chunkSize;
+
+        ScoreTask(UserTagSnapshot snapshot, TagVector queryTags, long excludeUserId, int k,
+                  SimilarityStrategy strategy, int from, int to, int chunkSize) {
+            this.snapshot = snapshot;
+            this.queryTags = queryTags;
+            this.excludeUserId = excludeUserId;
+            this.k = k;
+            this.strategy = strategy;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected TopKHeap compute() {
+            if (to - from <= chunkSize) {
+                TopKHeap topKHeap = new TopKHeap(k);
+                score(snapshot, queryTags, excludeUserId, strategy, from, to, topKHeap);
+                return topKHeap;
+            }
+            int mid = (from + to) >>> 1;
+            ScoreTask left = new ScoreTask(snapshot, queryTags, excludeUserId, k, strategy, from, mid, chunkSize);
+            ScoreTask right = new ScoreTask(snapshot, queryTags, excludeUserId, k, strategy, mid, to, chunkSize);
+            left.fork();
+            TopKHeap result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+
+    }
+
+}
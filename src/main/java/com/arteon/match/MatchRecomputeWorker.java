@@ -0,0 +1,63 @@
+package com.arteon.match;
+
+import com.arteon.event.UserTagChangeEvent;
+import com.arteon.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 匹配结果后台重算
+ * <p>
+ * 用户标签变更的事务提交后，让该用户的匹配结果失效，并在后台线程里把之前缓存过的查询重新算好放回缓存，
+ * 用户下次请求时直接命中。队列满了就丢弃，等用户请求时再同步计算。
+ */
+@Component
+@Slf4j
+public class MatchRecomputeWorker {
+
+    @Resource
+    private MatchResultCache matchResultCache;
+
+    @Resource
+    private UserService userService;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(1000), r -> {
+        Thread thread = new Thread(r, "match-recompute");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserTagChange(UserTagChangeEvent event) {
+        long userId = event.getUserId();
+        List<MatchResultCache.CachedQuery> queries = matchResultCache.evict(userId);
+        // 用户被删除了，不用再重算
+        if (event.isDeleted()) {
+            return;
+        }
+        for (MatchResultCache.CachedQuery query : queries) {
+            executor.execute(() -> {
+                try {
+                    userService.refreshMatchCache(userId, query.getK(), query.getStrategyEnum());
+                } catch (Exception e) {
+                    log.error("recompute match result error, userId: {}", userId, e);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
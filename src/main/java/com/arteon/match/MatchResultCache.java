@@ -0,0 +1,308 @@
+package com.arteon.match;
+
+import com.arteon.cache.ValueSizeStats;
+import com.arteon.commons.MatchStrategyEnum;
+import com.arteon.config.MatchConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户匹配结果缓存
+ * <p>
+ * 每个用户一个 Redis Hash：pm:user:match:{userId}，field 为 {K}:{算法}，value 为按相似度排好序的用户 id。
+ * 一个用户的所有结果放在一起，标签变更时删一个 key 就能全部失效。
+ * 整个 Hash 从第一次写入开始计算过期时间，保证别人改了标签后，最多过一个 TTL 结果就会重新计算。
+ * <p>
+ * 每个用户还有一个版本号 pm:user:match:version:{userId}，失效时加一。计算前先读版本号，写入时版本号变了就放弃，
+ * 标签修改之前开始的计算不会在失效之后把旧结果写回去。
+ * <p>
+ * 可选的本地 Caffeine 缓存放在 Redis 前面，失效时通过 Redis 频道通知其他节点删掉本地缓存。
+ */
+@Component
+@Slf4j
+public class MatchResultCache {
+
+    private static final String KEY_PREFIX = "pm:user:match:";
+
+    private static final String VERSION_KEY_PREFIX = "pm:user:match:version:";
+
+    private static final DefaultRedisScript<Long> PUT_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        PUT_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/match_result_put.lua")));
+        PUT_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private MatchConfig matchConfig;
+
+    @Resource
+    private ValueSizeStats valueSizeStats;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    /**
+     * 本节点的标识，收到自己发出的失效通知时忽略
+     */
+    private final String nodeId = UUID.randomUUID().toString().replace("-", "");
+
+    /**
+     * 本地缓存：用户id -> (field -> 结果)，未开启时为 null
+     */
+    private Cache<Long, Map<String, long[]>> localCache;
+
+    private RTopic invalidationTopic;
+
+    private Integer listenerId;
+
+    @PostConstruct
+    public void init() {
+        MatchConfig.Cache config = matchConfig.getCache();
+        if (!config.isEnabled() || !config.isLocalEnabled()) {
+            return;
+        }
+        localCache = Caffeine.newBuilder()
+                .maximumSize(config.getLocalMaxSize())
+                .expireAfterWrite(config.getLocalTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+        invalidationTopic = redissonClient.getTopic(config.getInvalidationTopic(), StringCodec.INSTANCE);
+        // 消息格式：{发送节点}:{用户id}
+        listenerId = invalidationTopic.addListener(String.class, (channel, message) -> {
+            int i = message.indexOf(':');
+            if (i > 0 && !nodeId.equals(message.substring(0, i))) {
+                try {
+                    localCache.invalidate(Long.parseLong(message.substring(i + 1)));
+                } catch (NumberFormatException e) {
+                    log.warn("invalid match result invalidation message: {}", message);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerId != null) {
+            invalidationTopic.removeListener(listenerId);
+        }
+    }
+
+    /**
+     * 获取缓存的匹配结果
+     *
+     * @return 用户 id，没有缓存返回 null
+     */
+    public long[] get(long userId, int k, MatchStrategyEnum strategyEnum) {
+        MatchConfig.Cache config = matchConfig.getCache();
+        if (!config.isEnabled()) {
+            return null;
+        }
+        String field = field(k, strategyEnum);
+        if (localCache != null) {
+            Map<String, long[]> entries = localCache.getIfPresent(userId);
+            long[] userIds = entries == null ? null : entries.get(field);
+            if (userIds != null) {
+                return userIds;
+            }
+        }
+        long[] userIds = null;
+        try {
+            HashOperations<String, String, long[]> ops = redisTemplate.opsForHash();
+            userIds = ops.get(KEY_PREFIX + userId, field);
+        } catch (Exception e) {
+            log.error("redis get match result error", e);
+        }
+        if (userIds != null) {
+            this.putLocal(userId, field, userIds);
+        }
+        return userIds;
+    }
+
+    /**
+     * 用户结果的当前版本号，开始计算前调用，写入时传给 {@link #put}
+     *
+     * @return 版本号，读取失败返回 null（这时算出来的结果不写入缓存）
+     */
+    public String version(long userId) {
+        if (!matchConfig.getCache().isEnabled()) {
+            return null;
+        }
+        try {
+            String version = stringRedisTemplate.opsForValue().get(VERSION_KEY_PREFIX + userId);
+            return version == null ? "0" : version;
+        } catch (Exception e) {
+            log.error("redis get match result version error", e);
+            return null;
+        }
+    }
+
+    /**
+     * 写入匹配结果
+     *
+     * @param version 计算前 {@link #version} 读到的版本号，之后结果被失效过就不写入
+     */
+    public void put(long userId, int k, MatchStrategyEnum strategyEnum, long[] userIds, String version) {
+        MatchConfig.Cache config = matchConfig.getCache();
+        if (!config.isEnabled() || version == null) {
+            return;
+        }
+        String field = field(k, strategyEnum);
+        String key = KEY_PREFIX + userId;
+        try {
+            // 自己序列化再写入，顺便统计值的大小
+            byte[] rawKey = this.serializer(redisTemplate.getKeySerializer()).serialize(key);
+            byte[] rawVersionKey = this.serializer(redisTemplate.getKeySerializer()).serialize(VERSION_KEY_PREFIX + userId);
+            byte[] rawField = this.serializer(redisTemplate.getHashKeySerializer()).serialize(field);
+            byte[] rawValue = this.serializer(redisTemplate.getHashValueSerializer()).serialize(userIds);
+            byte[] rawScript = PUT_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+            valueSizeStats.record(key, rawValue.length);
+            Long written = redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.scriptingCommands().eval(rawScript, ReturnType.INTEGER, 2, rawKey, rawVersionKey,
+                            version.getBytes(StandardCharsets.UTF_8), rawField, rawValue,
+                            String.valueOf(config.getTtlSeconds()).getBytes(StandardCharsets.UTF_8)));
+            if (written != null && written == 1) {
+                this.putLocal(userId, field, userIds);
+            }
+        } catch (Exception e) {
+            log.error("redis put match result error", e);
+        }
+    }
+
+    /**
+     * 让一个用户的所有匹配结果失效
+     *
+     * @return 失效前缓存过的 (K, 算法) 组合，方便后台重新计算
+     */
+    public List<CachedQuery> evict(long userId) {
+        List<CachedQuery> queries = new ArrayList<>();
+        if (!matchConfig.getCache().isEnabled()) {
+            return queries;
+        }
+        String key = KEY_PREFIX + userId;
+        try {
+            // 先加版本号再删除，正在进行的计算都写不进来；版本号多保留一个 TTL，比任何一次计算都久
+            String versionKey = VERSION_KEY_PREFIX + userId;
+            stringRedisTemplate.opsForValue().increment(versionKey);
+            stringRedisTemplate.expire(versionKey, matchConfig.getCache().getTtlSeconds() * 2, TimeUnit.SECONDS);
+            HashOperations<String, String, long[]> ops = redisTemplate.opsForHash();
+            Set<String> fields = ops.keys(key);
+            redisTemplate.delete(key);
+            for (String field : fields) {
+                CachedQuery query = CachedQuery.parse(field);
+                if (query != null) {
+                    queries.add(query);
+                }
+            }
+        } catch (Exception e) {
+            log.error("redis evict match result error", e);
+        }
+        // Redis 里的结果删掉之后再删本地缓存，避免本地缓存又从 Redis 读回旧结果
+        this.invalidateLocal(userId);
+        return queries;
+    }
+
+    private void invalidateLocal(long userId) {
+        if (localCache == null) {
+            return;
+        }
+        localCache.invalidate(userId);
+        try {
+            invalidationTopic.publish(nodeId + ":" + userId);
+        } catch (Exception e) {
+            log.error("publish match result invalidation error, userId: {}", userId, e);
+        }
+    }
+
+    private void putLocal(long userId, String field, long[] userIds) {
+        if (localCache == null) {
+            return;
+        }
+        // 同一个用户的结果一起过期，过期时间从这个用户的第一个结果写入开始计算
+        localCache.get(userId, id -> new ConcurrentHashMap<>()).put(field, userIds);
+    }
+
+    /**
+     * 用户的匹配结果所在的 Redis key
+     */
+    public static String keyOf(long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> serializer(RedisSerializer<?> serializer) {
+        return (RedisSerializer<Object>) serializer;
+    }
+
+    private static String field(int k, MatchStrategyEnum strategyEnum) {
+        return k + ":" + strategyEnum.name();
+    }
+
+    /**
+     * 缓存过的一次查询（K + 算法）
+     */
+    public static class CachedQuery {
+
+        private final int k;
+
+        private final MatchStrategyEnum strategyEnum;
+
+        CachedQuery(int k, MatchStrategyEnum strategyEnum) {
+            this.k = k;
+            this.strategyEnum = strategyEnum;
+        }
+
+        public int getK() {
+            return k;
+        }
+
+        public MatchStrategyEnum getStrategyEnum() {
+            return strategyEnum;
+        }
+
+        static CachedQuery parse(String field) {
+            String[] parts = field.split(":");
+            if (parts.length != 2) {
+                return null;
+            }
+            try {
+                return new CachedQuery(Integer.parseInt(parts[0]), MatchStrategyEnum.valueOf(parts[1]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+    }
+
+}
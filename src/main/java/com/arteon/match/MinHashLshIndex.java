@@ -0,0 +1,262 @@
+package com.arteon.match;
+
+import com.arteon.utils.ReusableTagVector;
+import com.arteon.utils.TagVector;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 基于 MinHash 的 LSH 索引（用于近似匹配）
+ * <p>
+ * 每个用户的标签集合计算 bands * rows 个 MinHash 值，每 rows 个值组成一个 band 放进桶里。
+ * 两个用户 Jaccard 相似度为 s 时，至少有一个 band 落进同一个桶的概率是 1 - (1 - s^rows)^bands，
+ * 查询时只取同桶的用户作为候选，再对候选精确打分，不用扫描全部用户。
+ * <p>
+ * 索引和构建它的快照绑定，候选用快照中的下标表示。之后修改过标签的用户记在 changedUserIds 里，
+ * 查询时这些用户不看桶、直接参与打分；攒得太多了再用最新的快照重建索引。
+ */
+public class MinHashLshIndex {
+
+    private final UserTagSnapshot snapshot;
+
+    private final int bands;
+
+    private final int rows;
+
+    /**
+     * 每个哈希函数的种子
+     */
+    private final long[] seeds;
+
+    /**
+     * 每个 band 的桶：bucketKeys[band] 升序排列，bucketPositions[band] 是对应用户在快照中的下标
+     */
+    private final long[][] bucketKeys;
+
+    private final int[][] bucketPositions;
+
+    /**
+     * 建索引之后修改过标签的用户 id，升序
+     */
+    private final long[] changedUserIds;
+
+    public MinHashLshIndex(UserTagSnapshot snapshot, int bands, int rows) {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("bands and rows must be positive");
+        }
+        this.snapshot = snapshot;
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = mix(0x9E3779B97F4A7C15L * (i + 1));
+        }
+        // 逐个 band 构建，每次只需要 rows 个哈希函数，也只占用一个 band 的临时内存
+        int n = snapshot.size();
+        int[] mins = new int[rows];
+        ReusableTagVector reusableTags = new ReusableTagVector();
+        this.bucketKeys = new long[bands][];
+        this.bucketPositions = new int[bands][];
+        for (int band = 0; band < bands; band++) {
+            long[] keys = new long[n];
+            int[] positions = new int[n];
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                TagVector tags = snapshot.loadTags(i, reusableTags);
+                // 没有已知标签的用户不进桶
+                if (!hasKnownTag(tags)) {
+                    continue;
+                }
+                keys[count] = bandKey(tags, band, mins);
+                positions[count] = i;
+                count++;
+            }
+            keys = Arrays.copyOf(keys, count);
+            positions = Arrays.copyOf(positions, count);
+            sort(keys, positions, 0, count - 1);
+            bucketKeys[band] = keys;
+            bucketPositions[band] = positions;
+        }
+        this.changedUserIds = new long[0];
+    }
+
+    private MinHashLshIndex(MinHashLshIndex base, long[] changedUserIds) {
+        this.snapshot = base.snapshot;
+        this.bands = base.bands;
+        this.rows = base.rows;
+        this.seeds = base.seeds;
+        this.bucketKeys = base.bucketKeys;
+        this.bucketPositions = base.bucketPositions;
+        this.changedUserIds = changedUserIds;
+    }
+
+    /**
+     * 记录修改过标签的用户，返回新的索引（桶和当前索引共享）
+     *
+     * @param userIds 修改过标签的用户 id，升序
+     */
+    public MinHashLshIndex withChangedUsers(long[] userIds) {
+        long[] merged = new long[changedUserIds.length + userIds.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < changedUserIds.length || j < userIds.length) {
+            long id;
+            if (j == userIds.length || (i < changedUserIds.length && changedUserIds[i] <= userIds[j])) {
+                id = changedUserIds[i++];
+            } else {
+                id = userIds[j++];
+            }
+            if (count == 0 || merged[count - 1] != id) {
+                merged[count++] = id;
+            }
+        }
+        return new MinHashLshIndex(this, Arrays.copyOf(merged, count));
+    }
+
+    public long[] getChangedUserIds() {
+        return changedUserIds;
+    }
+
+    /**
+     * 用户在建索引之后是否修改过标签
+     */
+    public boolean isChanged(long userId) {
+        return changedUserIds.length > 0 && Arrays.binarySearch(changedUserIds, userId) >= 0;
+    }
+
+    public UserTagSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * 查找和查询标签至少有一个 band 落进同一个桶的用户
+     *
+     * @return 候选用户在快照中的下标集合
+     */
+    public BitSet candidates(TagVector queryTags) {
+        BitSet result = new BitSet(snapshot.size());
+        if (!hasKnownTag(queryTags)) {
+            return result;
+        }
+        int[] mins = new int[rows];
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(queryTags, band, mins);
+            long[] keys = bucketKeys[band];
+            int[] positions = bucketPositions[band];
+            int i = lowerBound(keys, key);
+            while (i < keys.length && keys[i] == key) {
+                result.set(positions[i++]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计算一个 band 的桶 key：先算出这个 band 的 rows 个 MinHash 值，再合并成一个 long
+     *
+     * @param mins 临时数组，长度为 rows
+     */
+    private long bandKey(TagVector tags, int band, int[] mins) {
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        int from = band * rows;
+        long[] bits = tags.getBits();
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                int tagId = (w << 6) + Long.numberOfTrailingZeros(word);
+                for (int r = 0; r < rows; r++) {
+                    int h = (int) (mix(seeds[from + r] ^ tagId) >>> 33);
+                    if (h < mins[r]) {
+                        mins[r] = h;
+                    }
+                }
+                word &= word - 1;
+            }
+        }
+        long key = band;
+        for (int min : mins) {
+            key = key * 0x100000001B3L + min;
+        }
+        return mix(key);
+    }
+
+    private static boolean hasKnownTag(TagVector tags) {
+        for (long word : tags.getBits()) {
+            if (word != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 64 位哈希混淆（SplitMix64 的收尾步骤）
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 按 key 对两个平行数组做快速排序（避免装箱）
+     */
+    private static void sort(long[] keys, int[] positions, int low, int high) {
+        while (low < high) {
+            long pivot = keys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long k = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = k;
+                    int p = positions[i];
+                    positions[i] = positions[j];
+                    positions[j] = p;
+                    i++;
+                    j--;
+                }
+            }
+            // 先递归短的一半，控制栈深度
+            if (j - low < high - i) {
+                sort(keys, positions, low, j);
+                low = i;
+            } else {
+                sort(keys, positions, i, high);
+                high = j;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.arteon.match;
+
+import com.arteon.utils.ReusableTagVector;
+import com.arteon.utils.TagVector;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 一段用户标签的列式存储，数据放在堆外内存
+ * <p>
+ * 一个直接内存 ByteBuffer 依次存放三列：用户 id（long，升序）、每个用户的标签在标签列中的起始下标（int，多存一个结尾）、
+ * 所有用户的标签编号（int）。每个用户只占 12 字节再加每个标签 4 字节，堆上只有一个对象，GC 不用逐个扫描用户。
+ * <p>
+ * 创建后只读，可以被多个线程同时读取（只使用绝对位置读写，不改变缓冲区的 position）。
+ */
+final class TagColumns {
+
+    private final ByteBuffer buffer;
+
+    private final int size;
+
+    /**
+     * 起始下标列的字节位置
+     */
+    private final int offsetsBase;
+
+    /**
+     * 标签编号列的字节位置
+     */
+    private final int tagIdsBase;
+
+    private TagColumns(ByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+        this.offsetsBase = size << 3;
+        this.tagIdsBase = offsetsBase + ((size + 1) << 2);
+    }
+
+    /**
+     * 直接使用已有的列式数据（比如快照文件映射出来的内存），不做复制
+     */
+    static TagColumns wrap(ByteBuffer buffer, int size) {
+        return new TagColumns(buffer, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long userIdAt(int i) {
+        return buffer.getLong(i << 3);
+    }
+
+    private int tagStart(int i) {
+        return buffer.getInt(offsetsBase + (i << 2));
+    }
+
+    /**
+     * 把第 i 个用户的标签装进可复用的向量，不分配对象
+     */
+    ReusableTagVector loadTags(int i, ReusableTagVector target) {
+        int from = tagStart(i);
+        return target.load(buffer, tagIdsBase + (from << 2), tagStart(i + 1) - from);
+    }
+
+    /**
+     * 复制出第 i 个用户的标签（会分配对象，不要在扫描中使用）
+     */
+    TagVector tagsAt(int i) {
+        int from = tagStart(i);
+        int[] tagIds = new int[tagStart(i + 1) - from];
+        for (int j = 0; j < tagIds.length; j++) {
+            tagIds[j] = buffer.getInt(tagIdsBase + ((from + j) << 2));
+        }
+        return TagVector.of(tagIds);
+    }
+
+    /**
+     * 查找用户在段中的下标
+     *
+     * @return 下标，找不到时和 {@link Arrays#binarySearch} 一样返回 -(插入位置) - 1
+     */
+    int indexOf(long userId) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long id = userIdAt(mid);
+            if (id < userId) {
+                low = mid + 1;
+            } else if (id > userId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * 占用的堆外内存字节数
+     */
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * 整段数据的只读视图（position 为 0，limit 为 capacity），用于写入快照文件
+     */
+    ByteBuffer duplicateBuffer() {
+        ByteBuffer duplicate = buffer.asReadOnlyBuffer();
+        // 转成 Buffer 调用，避免高版本 JDK 编译后在 Java 8 上找不到 ByteBuffer.clear()
+        ((Buffer) duplicate).clear();
+        return duplicate;
+    }
+
+    /**
+     * 按 id 升序逐个追加用户，攒在堆上的临时数组里，build 时一次性写入堆外内存
+     * <p>
+     * build 之后可以继续追加下一段，临时数组会复用。
+     */
+    static final class Builder {
+
+        private long[] userIds = new long[64];
+
+        private int[] offsets = new int[65];
+
+        private int[] tagIds = new int[256];
+
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void add(long userId, int[] tags) {
+            ensureUsers();
+            ensureTags(tags.length);
+            int start = offsets[size];
+            System.arraycopy(tags, 0, tagIds, start, tags.length);
+            userIds[size] = userId;
+            offsets[++size] = start + tags.length;
+        }
+
+        /**
+         * 原样复制另一段中的第 i 个用户
+         */
+        void addFrom(TagColumns source, int i) {
+            int from = source.tagStart(i);
+            int length = source.tagStart(i + 1) - from;
+            ensureUsers();
+            ensureTags(length);
+            int start = offsets[size];
+            for (int j = 0; j < length; j++) {
+                tagIds[start + j] = source.buffer.getInt(source.tagIdsBase + ((from + j) << 2));
+            }
+            userIds[size] = source.userIdAt(i);
+            offsets[++size] = start + length;
+        }
+
+        TagColumns build() {
+            int tagCount = offsets[size];
+            ByteBuffer buffer = ByteBuffer.allocateDirect((size << 3) + ((size + 1) << 2) + (tagCount << 2))
+                    .order(ByteOrder.nativeOrder());
+            for (int i = 0; i < size; i++) {
+                buffer.putLong(userIds[i]);
+            }
+            for (int i = 0; i <= size; i++) {
+                buffer.putInt(offsets[i]);
+            }
+            for (int i = 0; i < tagCount; i++) {
+                buffer.putInt(tagIds[i]);
+            }
+            TagColumns columns = new TagColumns(buffer, size);
+            size = 0;
+            return columns;
+        }
+
+        private void ensureUsers() {
+            if (size + 1 == userIds.length) {
+                userIds = Arrays.copyOf(userIds, userIds.length * 2);
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+        }
+
+        private void ensureTags(int length) {
+            int need = offsets[size] + length;
+            if (need > tagIds.length) {
+                tagIds = Arrays.copyOf(tagIds, Math.max(need, tagIds.length * 2));
+            }
+        }
+
+    }
+
+}
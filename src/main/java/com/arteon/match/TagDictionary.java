@@ -0,0 +1,77 @@
+package com.arteon.match;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 标签字典：把每个不同的标签字符串映射成一个从 0 开始的 int 编号
+ * <p>
+ * 编号只增不减，同一个标签在进程生命周期内编号不变。
+ */
+public class TagDictionary {
+
+    /**
+     * 不在字典中的标签编号
+     */
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> tagIdMap = new ConcurrentHashMap<>();
+
+    private final List<String> tagNameList = new ArrayList<>();
+
+    /**
+     * 获取标签编号，不存在就分配一个新编号
+     */
+    public int getOrCreate(String tagName) {
+        Integer tagId = tagIdMap.get(tagName);
+        if (tagId != null) {
+            return tagId;
+        }
+        synchronized (this) {
+            return tagIdMap.computeIfAbsent(tagName, name -> {
+                tagNameList.add(name);
+                return tagNameList.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * 获取标签编号（只查不建）
+     *
+     * @return 标签编号，不存在返回 {@link #UNKNOWN}
+     */
+    public int lookup(String tagName) {
+        return tagIdMap.getOrDefault(tagName, UNKNOWN);
+    }
+
+    /**
+     * 按编号顺序恢复标签（从快照文件加载时使用，只能在字典为空时调用）
+     */
+    public synchronized void restore(List<String> tagNames) {
+        if (!tagIdMap.isEmpty()) {
+            throw new IllegalStateException("tag dictionary is not empty");
+        }
+        for (String tagName : tagNames) {
+            tagIdMap.put(tagName, tagNameList.size());
+            tagNameList.add(tagName);
+        }
+    }
+
+    /**
+     * 当前所有标签，下标即编号
+     */
+    public synchronized List<String> names() {
+        return new ArrayList<>(tagNameList);
+    }
+
+    public synchronized String nameOf(int tagId) {
+        return tagNameList.get(tagId);
+    }
+
+    public int size() {
+        return tagIdMap.size();
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.arteon.match;
+
+import com.arteon.utils.ReusableTagVector;
+import com.arteon.utils.TagVector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 标签倒排索引：标签编号 -> 拥有该标签的用户 id 列表（升序）
+ * <p>
+ * 按标签搜索用户时，从最短的列表开始依次求交集，不用再遍历全部用户。
+ */
+public class TagInvertedIndex {
+
+    private static final long[] EMPTY_POSTING = new long[0];
+
+    /**
+     * postings[tagId] 为拥有该标签的用户 id，升序
+     */
+    private final long[][] postings;
+
+    public TagInvertedIndex(UserTagSnapshot snapshot, int tagCount) {
+        // 先统计每个标签的人数，再一次性分配好数组
+        ReusableTagVector tags = new ReusableTagVector();
+        int[] df = new int[tagCount];
+        for (int i = 0; i < snapshot.size(); i++) {
+            forEachTag(snapshot.loadTags(i, tags), tagCount, tagId -> df[tagId]++);
+        }
+        this.postings = new long[tagCount][];
+        for (int tagId = 0; tagId < tagCount; tagId++) {
+            postings[tagId] = df[tagId] == 0 ? EMPTY_POSTING : new long[df[tagId]];
+        }
+        // 快照中的用户已经按 id 升序排好，顺序追加即可得到有序列表
+        int[] fill = new int[tagCount];
+        for (int i = 0; i < snapshot.size(); i++) {
+            long userId = snapshot.userIdAt(i);
+            forEachTag(snapshot.loadTags(i, tags), tagCount, tagId -> postings[tagId][fill[tagId]++] = userId);
+        }
+    }
+
+    private TagInvertedIndex(long[][] postings) {
+        this.postings = postings;
+    }
+
+    /**
+     * 写时复制：批量修改用户的标签，返回新的倒排索引，当前索引不变
+     * <p>
+     * 只复制标签有增减的那些列表，其余列表和新索引共享。
+     *
+     * @param userIds  要修改的用户 id，升序且不重复
+     * @param oldTags  修改前的标签，为 null 表示原来不在索引中
+     * @param newTags  修改后的标签，为 null 表示移出索引
+     * @param tagCount 当前的标签总数（字典只增不减）
+     * @return 新的倒排索引
+     */
+    public TagInvertedIndex apply(long[] userIds, TagVector[] oldTags, TagVector[] newTags, int tagCount) {
+        long[][] newPostings = Arrays.copyOf(postings, Math.max(tagCount, postings.length));
+        Arrays.fill(newPostings, postings.length, newPostings.length, EMPTY_POSTING);
+        // 每个受影响的标签要去掉和加上的用户，按 userIds 的顺序收集，本身就是升序
+        Map<Integer, List<Long>> removed = new HashMap<>();
+        Map<Integer, List<Long>> added = new HashMap<>();
+        for (int j = 0; j < userIds.length; j++) {
+            long userId = userIds[j];
+            TagVector before = oldTags[j];
+            TagVector after = newTags[j];
+            if (before != null) {
+                forEachTag(before, newPostings.length, tagId -> {
+                    if (after == null || !hasTag(after, tagId)) {
+                        removed.computeIfAbsent(tagId, key -> new ArrayList<>()).add(userId);
+                    }
+                });
+            }
+            if (after != null) {
+                forEachTag(after, newPostings.length, tagId -> {
+                    if (before == null || !hasTag(before, tagId)) {
+                        added.computeIfAbsent(tagId, key -> new ArrayList<>()).add(userId);
+                    }
+                });
+            }
+        }
+        Set<Integer> changedTagIds = new HashSet<>(removed.keySet());
+        changedTagIds.addAll(added.keySet());
+        for (int tagId : changedTagIds) {
+            newPostings[tagId] = merge(newPostings[tagId],
+                    removed.getOrDefault(tagId, Collections.emptyList()),
+                    added.getOrDefault(tagId, Collections.emptyList()));
+        }
+        return new TagInvertedIndex(newPostings);
+    }
+
+    /**
+     * 查询同时拥有所有标签的用户
+     *
+     * @param tagIds 标签编号，有负数（字典里没有的标签）时结果一定为空
+     * @return 用户 id，升序
+     */
+    public long[] search(int[] tagIds) {
+        if (tagIds.length == 0) {
+            return EMPTY_POSTING;
+        }
+        long[][] lists = new long[tagIds.length][];
+        for (int i = 0; i < tagIds.length; i++) {
+            int tagId = tagIds[i];
+            if (tagId < 0 || tagId >= postings.length) {
+                return EMPTY_POSTING;
+            }
+            lists[i] = postings[tagId];
+        }
+        // 从最短的列表开始求交集，结果只会越来越短
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        long[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 求两个升序列表的交集，对长列表用倍增查找跳过不可能命中的部分
+     */
+    private static long[] intersect(long[] shorter, long[] longer) {
+        long[] result = new long[shorter.length];
+        int count = 0;
+        int from = 0;
+        for (long id : shorter) {
+            from = gallop(longer, from, id);
+            if (from >= longer.length) {
+                break;
+            }
+            if (longer[from] == id) {
+                result[count++] = id;
+                from++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 从 from 开始查找第一个 >= id 的位置
+     */
+    private static int gallop(long[] list, int from, long id) {
+        int step = 1;
+        int high = from;
+        while (high < list.length && list[high] < id) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high + 1, list.length);
+        int i = Arrays.binarySearch(list, from, high, id);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * 从升序列表中去掉 removed、加上 added（都是升序），得到新的升序列表
+     */
+    private static long[] merge(long[] posting, List<Long> removed, List<Long> added) {
+        long[] result = new long[posting.length + added.size()];
+        int count = 0;
+        int r = 0;
+        int a = 0;
+        for (long id : posting) {
+            while (a < added.size() && added.get(a) < id) {
+                result[count++] = added.get(a++);
+            }
+            if (a < added.size() && added.get(a) == id) {
+                a++;
+            }
+            while (r < removed.size() && removed.get(r) < id) {
+                r++;
+            }
+            if (r < removed.size() && removed.get(r) == id) {
+                continue;
+            }
+            result[count++] = id;
+        }
+        while (a < added.size()) {
+            result[count++] = added.get(a++);
+        }
+        return count == 0 ? EMPTY_POSTING : Arrays.copyOf(result, count);
+    }
+
+    private static boolean hasTag(TagVector tags, int tagId) {
+        long[] bits = tags.getBits();
+        int word = tagId >>> 6;
+        return word < bits.length && (bits[word] & (1L << tagId)) != 0;
+    }
+
+    private interface TagConsumer {
+        void accept(int tagId);
+    }
+
+    private static void forEachTag(TagVector tags, int tagCount, TagConsumer consumer) {
+        long[] bits = tags.getBits();
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                int tagId = (w << 6) + Long.numberOfTrailingZeros(word);
+                if (tagId < tagCount) {
+                    consumer.accept(tagId);
+                }
+                word &= word - 1;
+            }
+        }
+    }
+
+}
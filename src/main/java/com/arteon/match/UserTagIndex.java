@@ -0,0 +1,536 @@
+package com.arteon.match;
+
+import com.arteon.config.MatchConfig;
+import com.arteon.domain.User;
+import com.arteon.event.UserTagChangeEvent;
+import com.arteon.mapper.UserMapper;
+import com.arteon.utils.TagVector;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StopWatch;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 常驻内存的用户标签索引（用于用户匹配）
+ * <p>
+ * 启动时从数据库加载一次所有用户的标签，用 {@link TagDictionary} 编码成 int 数组和位图。
+ * 匹配时直接扫描内存，不再查库、不再逐行解析 Json；同时维护标签倒排索引，供按标签搜索用户使用。
+ * <p>
+ * 之后用户注册、修改标签、被删除时，事务提交后发布 {@link UserTagChangeEvent}，
+ * 由唯一的更新线程批量写时复制到快照和索引上再整体替换，不需要全量重建，读线程也不会被阻塞。
+ * <p>
+ * 多个节点时，每个修改还会通过 Redis 频道广播给其他节点，排进它们各自的更新队列。
+ * 广播可能丢（比如和 Redis 断开期间），所以更新线程还会定时按 updateTime 从数据库补齐修改过的用户。
+ * <p>
+ * 开启 pm.match.snapshot.enabled 后会定时把快照保存成文件，重启时内存映射加载文件，
+ * 再只查询水位线之后修改过的用户补齐，不用扫描整张用户表。
+ */
+@Component
+@Slf4j
+public class UserTagIndex {
+
+    /**
+     * 标签 Json 串对应的类型，TypeToken 只创建一次
+     */
+    private static final Type TAG_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    private static final Gson GSON = new Gson();
+
+    private static final int[] EMPTY_TAGS = new int[0];
+
+    /**
+     * 排队等待应用的变更数上限，超过后丢弃并从数据库重建索引
+     */
+    private static final int MAX_PENDING_CHANGES = 100000;
+
+    /**
+     * 每批最多应用的变更数
+     */
+    private static final int APPLY_BATCH_SIZE = 512;
+
+    /**
+     * 从数据库补齐修改（恢复快照后、定时补齐）时每批应用的变更数
+     */
+    private static final int CATCH_UP_BATCH_SIZE = 8192;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private MatchConfig matchConfig;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    private final TagDictionary tagDictionary = new TagDictionary();
+
+    /**
+     * 本节点的标识，收到自己广播的修改时忽略（本节点的修改已经直接排队了）
+     */
+    private final String nodeId = UUID.randomUUID().toString().replace("-", "");
+
+    private RTopic changeTopic;
+
+    private Integer listenerId;
+
+    /**
+     * 当前快照，为 null 表示索引还没建好
+     */
+    private volatile UserTagSnapshot snapshot;
+
+    /**
+     * 按标签搜索用户用的倒排索引，为 null 表示还没建好
+     */
+    private volatile TagInvertedIndex invertedIndex;
+
+    /**
+     * 近似匹配用的 LSH 索引，没开启时为 null
+     */
+    private volatile MinHashLshIndex lshIndex;
+
+    /**
+     * 等待应用到索引的用户标签变更
+     */
+    private final BlockingQueue<UserTagChangeEvent> pendingChanges = new LinkedBlockingQueue<>(MAX_PENDING_CHANGES);
+
+    /**
+     * 队列满过、丢弃过变更，需要从数据库重建索引
+     */
+    private volatile boolean changeDropped;
+
+    /**
+     * 已同步到的时间点（数据库时钟）：updateTime 早于这个时间减去余量的修改，不管是哪个节点写的，都已经应用到了当前快照上
+     * <p>
+     * 只在全量加载、从文件恢复、定时补齐完成后前进，取的是开始扫描时数据库的时间。
+     */
+    private volatile long syncedUpTo;
+
+    /**
+     * 唯一的索引更新线程，索引建好后启动
+     */
+    private Thread applier;
+
+    /**
+     * 项目启动完成后构建索引，之后由更新线程增量维护
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (!matchConfig.isIndexEnabled()) {
+            log.info("user tag index disabled");
+            return;
+        }
+        // 先订阅其他节点的修改再建索引：建索引期间广播过来的修改先排队，建好之后再应用一遍
+        this.subscribe();
+        // 开启了快照文件就先从文件恢复，失败了再全量扫描数据库
+        boolean ready = matchConfig.getSnapshot().isEnabled() && this.restore();
+        if (ready || this.load()) {
+            applier = new Thread(this::applyChanges, "user-tag-index");
+            applier.setDaemon(true);
+            applier.start();
+        }
+    }
+
+    /**
+     * 用户写操作的事务提交后，把变更放进队列，由更新线程批量应用，同时广播给其他节点
+     * <p>
+     * 索引还没建好时也先排队：建索引扫描期间提交的修改会在建好之后再应用一遍，不会丢。
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserTagChange(UserTagChangeEvent event) {
+        if (!matchConfig.isIndexEnabled()) {
+            return;
+        }
+        this.enqueue(event);
+        if (changeTopic == null) {
+            return;
+        }
+        ChangeMessage message = new ChangeMessage();
+        message.nodeId = nodeId;
+        message.userId = event.getUserId();
+        message.tags = event.getTags();
+        message.deleted = event.isDeleted();
+        try {
+            changeTopic.publish(GSON.toJson(message));
+        } catch (Exception e) {
+            // 其他节点会在下次定时补齐时从数据库查到这个修改
+            log.error("publish user tag change error, userId: {}", event.getUserId(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerId != null) {
+            changeTopic.removeListener(listenerId);
+        }
+        if (applier != null) {
+            applier.interrupt();
+        }
+        this.saveSnapshot();
+    }
+
+    /**
+     * 订阅其他节点广播的修改
+     */
+    private void subscribe() {
+        try {
+            changeTopic = redissonClient.getTopic(matchConfig.getSync().getChangeTopic(), StringCodec.INSTANCE);
+            listenerId = changeTopic.addListener(String.class, (channel, message) -> this.onRemoteChange(message));
+        } catch (Exception e) {
+            // 订阅失败时其他节点的修改只能靠定时补齐，延迟更大，但不会丢
+            log.error("subscribe user tag change topic error", e);
+        }
+    }
+
+    private void onRemoteChange(String json) {
+        ChangeMessage message;
+        try {
+            message = GSON.fromJson(json, ChangeMessage.class);
+        } catch (JsonSyntaxException e) {
+            log.warn("invalid user tag change message: {}", json);
+            return;
+        }
+        if (message == null || nodeId.equals(message.nodeId)) {
+            return;
+        }
+        this.enqueue(message.deleted ? UserTagChangeEvent.deleted(this, message.userId)
+                : new UserTagChangeEvent(this, message.userId, message.tags));
+    }
+
+    private void enqueue(UserTagChangeEvent event) {
+        if (!pendingChanges.offer(event)) {
+            changeDropped = true;
+        }
+    }
+
+    /**
+     * 把当前快照保存到快照文件（没开启或者索引还没建好时什么都不做）
+     */
+    public synchronized void saveSnapshot() {
+        MatchConfig.Snapshot config = matchConfig.getSnapshot();
+        if (!config.isEnabled() || snapshot == null) {
+            return;
+        }
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        try {
+            // 先取水位线再取快照，快照只会更新不会更旧。水位线用最近一次从数据库同步的时间点，
+            // 只靠广播收到的修改不算（广播可能丢），再留出余量覆盖 updateTime 之后才提交的修改
+            long watermark = syncedUpTo - matchConfig.getSync().getCatchUpMarginSeconds() * 1000;
+            UserTagSnapshot current = snapshot;
+            UserTagSnapshotFile.write(Paths.get(config.getPath()), current, tagDictionary.names(), watermark);
+            stopWatch.stop();
+            log.info("user tag index snapshot saved, users: {}, cost: {}ms",
+                    current.size(), stopWatch.getTotalTimeMillis());
+        } catch (Exception e) {
+            log.error("save user tag index snapshot error", e);
+        }
+    }
+
+    /**
+     * 从快照文件恢复索引，再从数据库补齐水位线之后修改过的用户
+     *
+     * @return 是否恢复成功
+     */
+    private boolean restore() {
+        Path path = Paths.get(matchConfig.getSnapshot().getPath());
+        if (!Files.exists(path)) {
+            return false;
+        }
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        try {
+            UserTagSnapshotFile.Loaded loaded = UserTagSnapshotFile.read(path);
+            if (loaded == null) {
+                log.warn("user tag index snapshot format changed, ignored: {}", path);
+                return false;
+            }
+            tagDictionary.restore(loaded.getTagNames());
+            this.publish(loaded.getSnapshot());
+            // 补齐快照之后修改过的用户（包括被删除的），扫描开始前提交的修改都会包含在内
+            long scanStartedAt = userMapper.selectNow().getTime();
+            int changes = this.catchUpSince(loaded.getWatermark());
+            syncedUpTo = scanStartedAt;
+            stopWatch.stop();
+            log.info("user tag index restored from snapshot, users: {}, caught up: {}, cost: {}ms",
+                    snapshot.size(), changes, stopWatch.getTotalTimeMillis());
+            return true;
+        } catch (Exception e) {
+            // 恢复失败就全量加载，字典里已经恢复的标签不影响（编号只增不减）
+            log.error("restore user tag index from snapshot error", e);
+            return false;
+        }
+    }
+
+    /**
+     * 从数据库全量加载索引
+     *
+     * @return 是否加载成功
+     */
+    private boolean load() {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        try {
+            // 流式扫描，按 id 升序逐行编码后直接写进堆外的列式存储，不需要先把所有用户查出来
+            long scanStartedAt = userMapper.selectNow().getTime();
+            UserTagSnapshot.Builder builder = new UserTagSnapshot.Builder();
+            userMapper.scanUserTags(resultContext -> {
+                User user = resultContext.getResultObject();
+                builder.add(user.getId(), encode(user.getTags()));
+            });
+            UserTagSnapshot newSnapshot = builder.build(tagDictionary.size());
+            this.publish(newSnapshot);
+            syncedUpTo = scanStartedAt;
+            stopWatch.stop();
+            log.info("user tag index built, users: {}, tags: {}, off-heap: {}KB, cost: {}ms",
+                    newSnapshot.size(), tagDictionary.size(), newSnapshot.offHeapBytes() >> 10,
+                    stopWatch.getTotalTimeMillis());
+            return true;
+        } catch (Exception e) {
+            // 建索引失败不影响启动，匹配会回退到查数据库
+            log.error("build user tag index error", e);
+            return false;
+        }
+    }
+
+    /**
+     * 用完整的快照重建倒排索引和 LSH 索引，并发布快照
+     */
+    private void publish(UserTagSnapshot newSnapshot) {
+        newSnapshot.computeIdfSquaredNorms();
+        invertedIndex = new TagInvertedIndex(newSnapshot, tagDictionary.size());
+        MatchConfig.Lsh lsh = matchConfig.getLsh();
+        if (lsh.isEnabled()) {
+            lshIndex = new MinHashLshIndex(newSnapshot, lsh.getBands(), lsh.getRows());
+        }
+        snapshot = newSnapshot;
+    }
+
+    /**
+     * 更新线程：不断取出排队的变更，攒成一批应用到索引，并定时从数据库补齐
+     */
+    private void applyChanges() {
+        List<UserTagChangeEvent> batch = new ArrayList<>(APPLY_BATCH_SIZE);
+        long catchUpIntervalMillis = matchConfig.getSync().getCatchUpIntervalSeconds() * 1000;
+        long nextCatchUpAt = System.currentTimeMillis() + catchUpIntervalMillis;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (changeDropped) {
+                    // 有变更被丢弃了，只能重新扫描数据库。先清空队列：留在队列里的旧变更可能比扫描到的数据还旧，
+                    // 清空之后再排队的变更都比扫描到的数据新（或者一样）
+                    changeDropped = false;
+                    pendingChanges.clear();
+                    log.warn("user tag changes dropped, rebuilding user tag index");
+                    this.load();
+                    continue;
+                }
+                if (System.currentTimeMillis() >= nextCatchUpAt) {
+                    this.catchUp();
+                    nextCatchUpAt = System.currentTimeMillis() + catchUpIntervalMillis;
+                }
+                UserTagChangeEvent first = pendingChanges.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pendingChanges.drainTo(batch, APPLY_BATCH_SIZE - 1);
+                this.apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // 这一批修改丢了，和队列满了丢弃变更一样，下次从数据库重建
+                changeDropped = true;
+                log.error("apply user tag changes error", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 从数据库补齐上次同步之后修改过的用户，兜底没收到广播的修改（只在更新线程中调用）
+     * <p>
+     * 补齐的范围往前多留了余量，每次都会和上次重叠：个别修改就算被乱序的旧广播覆盖了，下次补齐也会改回来。
+     */
+    private void catchUp() {
+        try {
+            long scanStartedAt = userMapper.selectNow().getTime();
+            int changes = this.catchUpSince(syncedUpTo - matchConfig.getSync().getCatchUpMarginSeconds() * 1000);
+            syncedUpTo = scanStartedAt;
+            log.debug("user tag changes caught up, changed: {}", changes);
+        } catch (Exception e) {
+            // 同步时间点没有前进，下次补齐会覆盖这次的范围
+            log.error("catch up user tag changes error", e);
+        }
+    }
+
+    /**
+     * 查出 updateTime 在给定时间之后的用户（包括被删除的），分批应用到索引
+     *
+     * @return 应用的变更数
+     */
+    private int catchUpSince(long updatedSince) {
+        List<UserTagChangeEvent> changes = new ArrayList<>();
+        userMapper.scanUserTagsUpdatedSince(new Date(updatedSince), resultContext -> {
+            User user = resultContext.getResultObject();
+            changes.add(Objects.equals(user.getIsDelete(), 1) ? UserTagChangeEvent.deleted(this, user.getId())
+                    : new UserTagChangeEvent(this, user.getId(), user.getTags()));
+        });
+        for (int from = 0; from < changes.size(); from += CATCH_UP_BATCH_SIZE) {
+            this.apply(changes.subList(from, Math.min(from + CATCH_UP_BATCH_SIZE, changes.size())));
+        }
+        return changes.size();
+    }
+
+    /**
+     * 把一批变更写时复制到快照、倒排索引和 LSH 索引，读线程始终看到完整的某一版，不需要加锁
+     */
+    private void apply(List<UserTagChangeEvent> batch) {
+        // 同一个用户只保留最后一次变更，并按 id 排好序
+        TreeMap<Long, UserTagChangeEvent> latest = new TreeMap<>();
+        for (UserTagChangeEvent event : batch) {
+            latest.put(event.getUserId(), event);
+        }
+        UserTagSnapshot oldSnapshot = snapshot;
+        long[] userIds = new long[latest.size()];
+        TagVector[] oldTags = new TagVector[userIds.length];
+        TagVector[] newTags = new TagVector[userIds.length];
+        int i = 0;
+        for (UserTagChangeEvent event : latest.values()) {
+            userIds[i] = event.getUserId();
+            oldTags[i] = oldSnapshot.tagsOf(event.getUserId());
+            // 删除了或者没有标签的用户不在索引中（和建索引时的扫描条件一致）
+            boolean absent = event.isDeleted() || event.getTags() == null;
+            newTags[i] = absent ? null : TagVector.of(encode(event.getTags()));
+            i++;
+        }
+        int tagCount = tagDictionary.size();
+        UserTagSnapshot newSnapshot = oldSnapshot.apply(userIds, newTags, tagCount);
+        newSnapshot.computeIdfSquaredNorms();
+        invertedIndex = invertedIndex.apply(userIds, oldTags, newTags, tagCount);
+        // 先发布 LSH 再发布快照：读到新快照的线程一定也能读到包含这批修改的 LSH
+        MinHashLshIndex oldLshIndex = lshIndex;
+        if (oldLshIndex != null) {
+            MatchConfig.Lsh lsh = matchConfig.getLsh();
+            MinHashLshIndex newLshIndex = oldLshIndex.withChangedUsers(userIds);
+            if (newLshIndex.getChangedUserIds().length > lsh.getRebuildThreshold()) {
+                newLshIndex = new MinHashLshIndex(newSnapshot, lsh.getBands(), lsh.getRows());
+            }
+            lshIndex = newLshIndex;
+        }
+        snapshot = newSnapshot;
+        log.debug("user tag changes applied, changed: {}, users: {}", userIds.length, newSnapshot.size());
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    public UserTagSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public TagInvertedIndex getInvertedIndex() {
+        return invertedIndex;
+    }
+
+    public MinHashLshIndex getLshIndex() {
+        return lshIndex;
+    }
+
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    /**
+     * 把标签 Json 串编码成标签编号数组（新标签会加入字典）
+     */
+    public int[] encode(String tagsJson) {
+        List<String> tagList = parseTags(tagsJson);
+        if (tagList.isEmpty()) {
+            return EMPTY_TAGS;
+        }
+        int[] tagIds = new int[tagList.size()];
+        for (int i = 0; i < tagIds.length; i++) {
+            tagIds[i] = tagDictionary.getOrCreate(tagList.get(i));
+        }
+        return tagIds;
+    }
+
+    /**
+     * 把查询用的标签编码成标签编号数组（只查字典，不会新增标签）
+     * <p>
+     * 字典里没有的标签依次编码为 -1、-2 ...，保证它们互不相等，也不会和任何用户的标签相等。
+     */
+    public int[] encodeForQuery(List<String> tagList) {
+        if (tagList == null || tagList.isEmpty()) {
+            return EMPTY_TAGS;
+        }
+        int[] tagIds = new int[tagList.size()];
+        int unknown = 0;
+        for (int i = 0; i < tagIds.length; i++) {
+            int tagId = tagDictionary.lookup(tagList.get(i));
+            tagIds[i] = tagId != TagDictionary.UNKNOWN ? tagId : -(++unknown);
+        }
+        return tagIds;
+    }
+
+    /**
+     * 广播给其他节点的标签修改
+     */
+    private static class ChangeMessage {
+
+        /**
+         * 发出修改的节点
+         */
+        private String nodeId;
+
+        private long userId;
+
+        private String tags;
+
+        private boolean deleted;
+
+    }
+
+    /**
+     * 解析标签 Json 串，格式不对就当作没有标签
+     */
+    public static List<String> parseTags(String tagsJson) {
+        if (tagsJson == null) {
+            return Collections.emptyList();
+        }
+        try {
+            List<String> tagList = GSON.fromJson(tagsJson, TAG_LIST_TYPE);
+            return tagList == null ? Collections.emptyList() : tagList;
+        } catch (JsonSyntaxException e) {
+            return Collections.emptyList();
+        }
+    }
+
+}
@@ -0,0 +1,374 @@
+package com.arteon.match;
+
+import com.arteon.utils.IdfCosineSimilarity;
+import com.arteon.utils.ReusableTagVector;
+import com.arteon.utils.TagVector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 用户标签索引的只读快照
+ * <p>
+ * 用户按 id 升序排列，每个用户的标签编码成有序的标签编号，按列存放在堆外内存中（见 {@link TagColumns}），
+ * 堆上不再为每个用户保留对象。扫描时用 {@link ReusableTagVector} 逐行装入，不分配对象。
+ * 构建时顺便统计每个标签的 IDF 权重，供加权余弦相似度使用。
+ * <p>
+ * 用户按 id 切成若干段，每段最多 {@link #MAX_SEGMENT_SIZE} 个用户。快照本身不可变，
+ * 用户修改标签时用 {@link #apply} 写时复制：只复制被修改的段，没变的段和新快照共享。
+ */
+public class UserTagSnapshot {
+
+    /**
+     * 构建时每段的用户数
+     */
+    static final int SEGMENT_SIZE = 4096;
+
+    /**
+     * 增量修改后段的最大用户数，超过就切开
+     */
+    static final int MAX_SEGMENT_SIZE = SEGMENT_SIZE * 2;
+
+    /**
+     * 每段的列式存储（段内 id 升序，段与段之间也升序，不会有空段）
+     */
+    private final TagColumns[] segments;
+
+    /**
+     * segmentStarts[s] 为第 s 段第一个用户在整个快照中的下标，最后多一个元素等于 size
+     */
+    private final int[] segmentStarts;
+
+    /**
+     * 每个标签编号的使用人数
+     */
+    private final int[] df;
+
+    /**
+     * 每个标签编号的 IDF 权重：ln((N + 1) / (df + 1)) + 1
+     */
+    private final double[] idf;
+
+    /**
+     * 没有人用过的标签的 IDF 权重（也是最大的权重）
+     */
+    private final double unknownIdf;
+
+    /**
+     * 每个用户标签的 IDF 加权模长平方（按下标），发布前由索引更新线程算好，没算过时为 null
+     */
+    private volatile double[] idfSquaredNorms;
+
+    public UserTagSnapshot(long[] userIds, TagVector[] userTags, int tagCount) {
+        this(buildSegments(userIds, userTags), new int[tagCount], true);
+    }
+
+    /**
+     * @param countDf 为 true 时 df 是空的，需要扫描所有段统计
+     */
+    private UserTagSnapshot(TagColumns[] segments, int[] df, boolean countDf) {
+        this.segments = segments;
+        this.segmentStarts = new int[segments.length + 1];
+        for (int s = 0; s < segments.length; s++) {
+            segmentStarts[s + 1] = segmentStarts[s] + segments[s].size();
+        }
+        if (countDf) {
+            ReusableTagVector tags = new ReusableTagVector();
+            for (TagColumns segment : segments) {
+                for (int i = 0; i < segment.size(); i++) {
+                    countTags(df, segment.loadTags(i, tags), 1);
+                }
+            }
+        }
+        this.df = df;
+        this.idf = new double[df.length];
+        this.unknownIdf = computeIdf(df, size(), idf);
+    }
+
+    /**
+     * 用现成的段创建快照（比如从快照文件中读出来的段）
+     */
+    static UserTagSnapshot ofSegments(TagColumns[] segments, int tagCount) {
+        return new UserTagSnapshot(segments, new int[tagCount], true);
+    }
+
+    private static TagColumns[] buildSegments(long[] userIds, TagVector[] userTags) {
+        TagColumns[] segments = new TagColumns[(userIds.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE];
+        TagColumns.Builder builder = new TagColumns.Builder();
+        for (int i = 0; i < userIds.length; i++) {
+            builder.add(userIds[i], userTags[i].getTagIds());
+            if (builder.size() == SEGMENT_SIZE || i == userIds.length - 1) {
+                segments[i / SEGMENT_SIZE] = builder.build();
+            }
+        }
+        return segments;
+    }
+
+    public int size() {
+        return segmentStarts[segmentStarts.length - 1];
+    }
+
+    public long userIdAt(int i) {
+        int s = segmentOf(i);
+        return segments[s].userIdAt(i - segmentStarts[s]);
+    }
+
+    /**
+     * 复制出第 i 个用户的标签（会分配对象，扫描时用 {@link #loadTags}）
+     */
+    public TagVector tagsAt(int i) {
+        int s = segmentOf(i);
+        return segments[s].tagsAt(i - segmentStarts[s]);
+    }
+
+    /**
+     * 把第 i 个用户的标签装进可复用的向量
+     */
+    public ReusableTagVector loadTags(int i, ReusableTagVector target) {
+        int s = segmentOf(i);
+        return segments[s].loadTags(i - segmentStarts[s], target);
+    }
+
+    public double[] getIdf() {
+        return idf;
+    }
+
+    public double getUnknownIdf() {
+        return unknownIdf;
+    }
+
+    /**
+     * 每个用户标签的 IDF 加权模长平方（按下标），余弦相似度用
+     *
+     * @return 没调用过 {@link #computeIdfSquaredNorms} 时返回 null，由调用方逐个计算
+     */
+    public double[] getIdfSquaredNorms() {
+        return idfSquaredNorms;
+    }
+
+    /**
+     * 算好每个用户标签的 IDF 加权模长平方
+     * <p>
+     * 每次写入都会改变 df，新快照的模长都要重算。在发布快照之前由索引更新线程调用，
+     * 扫描全部用户的开销不会落在请求线程上。
+     */
+    void computeIdfSquaredNorms() {
+        IdfCosineSimilarity cosine = new IdfCosineSimilarity(idf, unknownIdf);
+        double[] norms = new double[size()];
+        ReusableTagVector tags = new ReusableTagVector();
+        for (int i = 0; i < norms.length; i++) {
+            norms[i] = cosine.squaredNorm(this.loadTags(i, tags));
+        }
+        idfSquaredNorms = norms;
+    }
+
+    /**
+     * 查找用户的标签（会分配对象）
+     *
+     * @return 用户的标签，用户不在索引中返回 null
+     */
+    public TagVector tagsOf(long userId) {
+        int i = this.indexOf(userId);
+        return i >= 0 ? this.tagsAt(i) : null;
+    }
+
+    /**
+     * 查找用户在快照中的下标
+     *
+     * @return 下标，用户不在索引中返回 -1
+     */
+    public int indexOf(long userId) {
+        int s = segmentFor(userId);
+        if (s < 0) {
+            return -1;
+        }
+        int i = segments[s].indexOf(userId);
+        return i >= 0 ? segmentStarts[s] + i : -1;
+    }
+
+    /**
+     * 第一个 id 不小于 userId 的用户在快照中的下标
+     *
+     * @return 下标，所有用户的 id 都比它小时返回 size()
+     */
+    public int ceilingIndex(long userId) {
+        int s = Math.max(segmentFor(userId), 0);
+        if (s >= segments.length) {
+            return size();
+        }
+        int i = segments[s].indexOf(userId);
+        return segmentStarts[s] + (i >= 0 ? i : -i - 1);
+    }
+
+    /**
+     * 所有段占用的堆外内存字节数
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (TagColumns segment : segments) {
+            bytes += segment.capacity();
+        }
+        return bytes;
+    }
+
+    int segmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * 第 s 段第一个用户在整个快照中的下标
+     */
+    int segmentStart(int s) {
+        return segmentStarts[s];
+    }
+
+    TagColumns segment(int s) {
+        return segments[s];
+    }
+
+    /**
+     * 下标 i 所在的段
+     */
+    int segmentOf(int i) {
+        // 段都不为空，segmentStarts 严格递增
+        int s = Arrays.binarySearch(segmentStarts, i);
+        return s >= 0 ? s : -s - 2;
+    }
+
+    /**
+     * 写时复制：批量修改用户的标签，返回新的快照，当前快照不变
+     *
+     * @param userIds  要修改的用户 id，升序且不重复
+     * @param newTags  新的标签，为 null 表示把用户移出索引
+     * @param tagCount 当前的标签总数（字典只增不减）
+     * @return 新的快照
+     */
+    public UserTagSnapshot apply(long[] userIds, TagVector[] newTags, int tagCount) {
+        int[] newDf = Arrays.copyOf(df, Math.max(tagCount, df.length));
+        List<TagColumns> newSegments = new ArrayList<>(segments.length + 1);
+        TagColumns.Builder builder = new TagColumns.Builder();
+        ReusableTagVector oldTags = new ReusableTagVector();
+        int change = 0;
+        for (int s = 0; s < segments.length || change < userIds.length; s++) {
+            // 落在这一段的修改：id 小于下一段的第一个 id（最后一段收下剩下所有的修改）
+            long upper = s + 1 < segments.length ? segments[s + 1].userIdAt(0) : Long.MAX_VALUE;
+            int from = change;
+            while (change < userIds.length && userIds[change] < upper) {
+                change++;
+            }
+            TagColumns segment = s < segments.length ? segments[s] : null;
+            if (from == change) {
+                // 没有修改的段直接共享
+                if (segment != null) {
+                    newSegments.add(segment);
+                }
+                continue;
+            }
+            // 合并原来的段和这一段的修改，写出新的段，太大就切开，空了就去掉
+            int segmentSize = segment == null ? 0 : segment.size();
+            int i = 0;
+            int j = from;
+            while (i < segmentSize || j < change) {
+                if (builder.size() == MAX_SEGMENT_SIZE) {
+                    newSegments.add(builder.build());
+                }
+                if (j == change || (i < segmentSize && segment.userIdAt(i) < userIds[j])) {
+                    builder.addFrom(segment, i++);
+                    continue;
+                }
+                if (i < segmentSize && segment.userIdAt(i) == userIds[j]) {
+                    countTags(newDf, segment.loadTags(i++, oldTags), -1);
+                }
+                if (newTags[j] != null) {
+                    countTags(newDf, newTags[j], 1);
+                    builder.add(userIds[j], newTags[j].getTagIds());
+                }
+                j++;
+            }
+            if (builder.size() > 0) {
+                newSegments.add(builder.build());
+            }
+        }
+        return new UserTagSnapshot(newSegments.toArray(new TagColumns[0]), newDf, false);
+    }
+
+    /**
+     * 逐个追加用户（按 id 升序）构建快照，不需要先把所有用户的标签放在堆上
+     */
+    public static class Builder {
+
+        private final List<TagColumns> segments = new ArrayList<>();
+
+        private final TagColumns.Builder builder = new TagColumns.Builder();
+
+        private long lastUserId = Long.MIN_VALUE;
+
+        public void add(long userId, int[] tagIds) {
+            if (userId <= lastUserId) {
+                throw new IllegalArgumentException("user ids must be ascending");
+            }
+            lastUserId = userId;
+            builder.add(userId, tagIds);
+            if (builder.size() == SEGMENT_SIZE) {
+                segments.add(builder.build());
+            }
+        }
+
+        public UserTagSnapshot build(int tagCount) {
+            if (builder.size() > 0) {
+                segments.add(builder.build());
+            }
+            return new UserTagSnapshot(segments.toArray(new TagColumns[0]), new int[tagCount], true);
+        }
+
+    }
+
+    /**
+     * 用户 id 应该所在的段：第一个 id 不大于它的最后一段
+     *
+     * @return 段下标，比所有段都小或者快照为空时返回 -1
+     */
+    private int segmentFor(long userId) {
+        int low = 0;
+        int high = segments.length - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (segments[mid].userIdAt(0) <= userId) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    private static void countTags(int[] df, TagVector vector, int delta) {
+        long[] bits = vector.getBits();
+        for (int i = 0; i < bits.length; i++) {
+            long word = bits[i];
+            while (word != 0) {
+                int tagId = (i << 6) + Long.numberOfTrailingZeros(word);
+                if (tagId < df.length) {
+                    df[tagId] += delta;
+                }
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * 计算每个标签的 IDF 权重
+     *
+     * @return 没有人用过的标签的权重
+     */
+    private static double computeIdf(int[] df, int n, double[] idf) {
+        for (int i = 0; i < df.length; i++) {
+            idf[i] = Math.log((n + 1.0) / (df[i] + 1.0)) + 1;
+        }
+        return Math.log(n + 1.0) + 1;
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.arteon.match;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用户标签快照文件：把快照和标签字典保存到磁盘，重启时用内存映射直接加载，不用再扫描整张用户表
+ * <p>
+ * 文件格式（字节序为写入机器的本地字节序，读取时不一致就放弃）：
+ * <pre>
+ * magic(int) version(int) byteOrder(int) watermark(long)
+ * 标签数(int) 每个标签：UTF-8 字节数(int) + 字节
+ * 段数(int) 每个段：用户数(int) 字节数(int) 补齐到 8 字节 + 段的列式数据（见 {@link TagColumns}）
+ * </pre>
+ * 段的数据原样写入，读取时直接切出映射内存中的对应区域使用，不做复制。
+ */
+public class UserTagSnapshotFile {
+
+    private static final int MAGIC = 0x504D5453;
+
+    /**
+     * 文件格式版本，格式有变化时加一，旧版本的文件会被忽略
+     */
+    static final int VERSION = 1;
+
+    private static final int NATIVE_ORDER = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 2;
+
+    private UserTagSnapshotFile() {
+    }
+
+    /**
+     * 写入快照文件：先写临时文件，写完再替换，进程中途退出也不会留下半个文件
+     *
+     * @param path      文件路径
+     * @param snapshot  快照
+     * @param tagNames  标签字典中的所有标签，下标即编号
+     * @param watermark 水位线：updateTime 不早于它的用户需要在加载后重新同步
+     */
+    public static void write(Path path, UserTagSnapshot snapshot, List<String> tagNames, long watermark)
+            throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC).putInt(VERSION).putInt(NATIVE_ORDER).putLong(watermark).putInt(tagNames.size());
+            flip(header);
+            writeFully(channel, header);
+            for (String tagName : tagNames) {
+                byte[] bytes = tagName.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length).order(ByteOrder.nativeOrder());
+                buffer.putInt(bytes.length).put(bytes);
+                flip(buffer);
+                writeFully(channel, buffer);
+            }
+            ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+            count.putInt(snapshot.segmentCount());
+            flip(count);
+            writeFully(channel, count);
+            for (int s = 0; s < snapshot.segmentCount(); s++) {
+                TagColumns segment = snapshot.segment(s);
+                ByteBuffer segmentHeader = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+                segmentHeader.putInt(segment.size()).putInt(segment.capacity());
+                flip(segmentHeader);
+                writeFully(channel, segmentHeader);
+                // 段数据按 8 字节对齐，映射后读 long 时地址也是对齐的
+                writeFully(channel, ByteBuffer.allocate(padding(channel.position())));
+                writeFully(channel, segment.duplicateBuffer());
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 用内存映射读取快照文件
+     *
+     * @return 读取结果，文件版本或字节序不一致时返回 null
+     */
+    public static Loaded read(Path path) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 映射建立后即使关闭通道也一直有效
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.nativeOrder());
+        if (buffer.remaining() < 24 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                || buffer.getInt() != NATIVE_ORDER) {
+            return null;
+        }
+        long watermark = buffer.getLong();
+        int tagCount = buffer.getInt();
+        List<String> tagNames = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            tagNames.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        int segmentCount = buffer.getInt();
+        TagColumns[] segments = new TagColumns[segmentCount];
+        for (int s = 0; s < segmentCount; s++) {
+            int size = buffer.getInt();
+            int byteLength = buffer.getInt();
+            position(buffer, buffer.position() + padding(buffer.position()));
+            ByteBuffer slice = buffer.duplicate();
+            ((Buffer) slice).limit(slice.position() + byteLength);
+            segments[s] = TagColumns.wrap(slice.slice().order(ByteOrder.nativeOrder()), size);
+            position(buffer, buffer.position() + byteLength);
+        }
+        return new Loaded(UserTagSnapshot.ofSegments(segments, tagCount), tagNames, watermark);
+    }
+
+    private static int padding(long position) {
+        return (int) ((8 - (position & 7)) & 7);
+    }
+
+    /*
+     * flip、position、limit 都转成 Buffer 再调用：用高版本 JDK 编译时 ByteBuffer 重写了这些方法，直接调用在 Java 8 上会找不到方法
+     */
+
+    private static void flip(ByteBuffer buffer) {
+        ((Buffer) buffer).flip();
+    }
+
+    private static void position(ByteBuffer buffer, int position) {
+        ((Buffer) buffer).position(position);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 读取结果
+     */
+    @Getter
+    public static class Loaded {
+
+        private final UserTagSnapshot snapshot;
+
+        /**
+         * 标签字典中的所有标签，下标即编号
+         */
+        private final List<String> tagNames;
+
+        private final long watermark;
+
+        Loaded(UserTagSnapshot snapshot, List<String> tagNames, long watermark) {
+            this.snapshot = snapshot;
+            this.tagNames = tagNames;
+            this.watermark = watermark;
+        }
+
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.arteon.service;
+
+import com.arteon.domain.request.MatchBatchRequest;
+import com.arteon.domain.vo.MatchBatchJobVO;
+
+/**
+ * 批量匹配服务：一次计算很多用户的匹配结果（数据分析、每日推荐推送）
+ */
+public interface MatchBatchService {
+
+    /**
+     * 提交批量匹配任务，后台异步计算
+     *
+     * @param matchBatchRequest 请求参数
+     * @return 任务（包含任务 id 和结果所在的 Redis key）
+     */
+    MatchBatchJobVO submit(MatchBatchRequest matchBatchRequest);
+
+    /**
+     * 查询任务进度
+     *
+     * @param jobId 任务 id
+     * @return 任务
+     */
+    MatchBatchJobVO getJob(String jobId);
+
+    /**
+     * 继续执行失败的任务，从上次算完的用户之后开始
+     *
+     * @param jobId 任务 id
+     * @return 任务
+     */
+    MatchBatchJobVO resume(String jobId);
+
+}
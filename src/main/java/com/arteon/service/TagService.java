@@ -0,0 +1,19 @@
+package com.arteon.service;
+
+import com.arteon.domain.Tag;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface TagService extends IService<Tag> {
+
+    /**
+     * 获取标签的id，不存在的标签会先插入标签表
+     *
+     * @param tagNames 标签名
+     * @return 标签名 -> 标签id
+     */
+    Map<String, Long> getOrCreateTagIds(Collection<String> tagNames);
+
+}
@@ -0,0 +1,36 @@
+package com.arteon.service;
+
+import com.arteon.domain.Team;
+
+/**
+ * 加入队伍准入：在 Redis 中用一个 Lua 脚本原子地检查并占用队伍名额，不用加分布式锁
+ * <p>
+ * Redis 中的计数只是挡在数据库前面的一道闸，最终以数据库为准：准入通过后写数据库，写失败时调用 {@link #release} 归还名额。
+ */
+public interface TeamAdmissionService {
+
+    /**
+     * 检查并占用名额：队伍没满、用户加入的队伍没超过上限、没有重复加入
+     *
+     * @param team   要加入的队伍
+     * @param userId 用户 id
+     */
+    void admit(Team team, long userId);
+
+    /**
+     * 归还名额（写数据库失败时补偿，或者用户退出了队伍）
+     *
+     * @param teamId 队伍 id
+     * @param userId 用户 id
+     */
+    void release(long teamId, long userId);
+
+    /**
+     * 删除队伍和用户的计数，下次准入时从数据库重新加载（不经过准入修改了成员关系时调用）
+     *
+     * @param teamId  队伍 id，为 null 时不删除
+     * @param userIds 用户 id
+     */
+    void evict(Long teamId, Long... userIds);
+
+}
@@ -6,6 +6,7 @@ import com.arteon.domain.dto.TeamQuery;
 import com.arteon.domain.request.TeamJoinRequest;
 import com.arteon.domain.request.TeamQuitRequest;
 import com.arteon.domain.request.TeamUpdateRequest;
+import com.arteon.domain.vo.CursorPageVO;
 import com.arteon.domain.vo.TeamVO;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -21,6 +22,8 @@ public interface TeamService extends IService<Team> {
 
     List<TeamVO> listTeam(TeamQuery teamQuery, User loginUser);
 
+    CursorPageVO<TeamVO> listTeamByCursor(TeamQuery teamQuery, User loginUser);
+
     List<TeamVO> myCreateTeamList(Long id);
 
     List<TeamVO> myJoinTeamList(User loginUser);
@@ -1,6 +1,9 @@
 package com.arteon.service;
 
+import com.arteon.commons.MatchStrategyEnum;
 import com.arteon.domain.User;
+import com.arteon.domain.vo.CursorPageVO;
+import com.arteon.domain.vo.MatchRecallVO;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -48,12 +51,11 @@ public interface UserService extends IService<User> {
 
     /**
      * 通过标签列表查询用户（要求用户包含列表中所有的标签，使用sql实现）
+     * 查询user_tag关系表，需要先执行sql/user_tag.sql建表并回填历史数据
      *
      * @param tagNameList 标签名列表
      * @return List Of User
      */
-    @Deprecated
-    // 标记为过时，不建议使用
     List<User> searchUsersByTagsBySql(List<String> tagNameList);
 
     /**
@@ -68,6 +70,14 @@ public interface UserService extends IService<User> {
 
     int updateUser(User user, User loginUser);
 
+    /**
+     * 删除用户（逻辑删除），事务提交后把用户移出匹配索引
+     *
+     * @param id 要删除的用户id
+     * @return true-删除成功，false-用户不存在
+     */
+    boolean deleteUser(long id);
+
     boolean isAdmin(User loginUser);
 
     /**
@@ -81,12 +91,42 @@ public interface UserService extends IService<User> {
     Page<User> recommendUsers(long pageNum, long pageSize, User loginUser);
 
     /**
-     * 使用编辑距离算法计算两个用户标签的相似度，为当前用户推荐相似用户
+     * 推荐用户（游标分页）：按 id 升序取上一页之后的用户，不查询总数，翻到多深都一样快
+     *
+     * @param cursor    上一页返回的游标，第一页不传
+     * @param pageSize  单页大小
+     * @param loginUser 当前用户
+     * @return 这一页的用户和下一页的游标
+     */
+    CursorPageVO<User> recommendUsersByCursor(String cursor, long pageSize, User loginUser);
+
+    /**
+     * 计算两个用户标签的相似度，为当前用户推荐相似用户
      *
-     * @param num  返回的用户数量
-     * @param user 当前用户
+     * @param num          返回的用户数量
+     * @param strategyEnum 相似度算法，为null时使用配置的默认算法（编辑距离）
+     * @param user         当前用户
      * @return List of User
      */
-    List<User> matchUsers(long num, User user);
+    List<User> matchUsers(long num, MatchStrategyEnum strategyEnum, User user);
+
+    /**
+     * 重新计算用户的匹配结果并放入缓存（后台重算用）
+     *
+     * @param userId       用户id
+     * @param num          返回的用户数量
+     * @param strategyEnum 相似度算法
+     */
+    void refreshMatchCache(long userId, int num, MatchStrategyEnum strategyEnum);
+
+    /**
+     * 评估近似匹配的召回率（Recall@K），用于选择LSH的band和row参数
+     *
+     * @param k            每次匹配返回的用户数
+     * @param sampleSize   抽样的用户数
+     * @param strategyEnum 相似度算法，为null时使用配置的默认算法
+     * @return 评估结果
+     */
+    MatchRecallVO evaluateMatchRecall(int k, int sampleSize, MatchStrategyEnum strategyEnum);
 
 }
@@ -0,0 +1,27 @@
+package com.arteon.service;
+
+import com.arteon.domain.UserTag;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+import java.util.Map;
+
+public interface UserTagService extends IService<UserTag> {
+
+    /**
+     * 用用户最新的标签覆盖 user_tag 表中该用户的关系
+     *
+     * @param userId   用户id
+     * @param tagsJson 标签列表 json，为 null 或空列表时清空该用户的标签
+     */
+    void syncUserTags(long userId, String tagsJson);
+
+    /**
+     * 批量写入多个用户的标签关系（只新增，不删除，用于回填历史数据）
+     *
+     * @param userTagsMap 用户id -> 标签列表 json
+     * @return 写入的关系数
+     */
+    int insertUserTags(Map<Long, String> userTagsMap);
+
+}
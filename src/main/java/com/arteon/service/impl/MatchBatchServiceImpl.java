@@ -0,0 +1,282 @@
+package com.arteon.service.impl;
+
+import com.arteon.commons.ErrorCode;
+import com.arteon.commons.MatchBatchStatusEnum;
+import com.arteon.commons.MatchStrategyEnum;
+import com.arteon.config.MatchConfig;
+import com.arteon.domain.request.MatchBatchRequest;
+import com.arteon.domain.vo.MatchBatchJobVO;
+import com.arteon.exception.BusinessException;
+import com.arteon.match.MatchEngine;
+import com.arteon.match.UserTagIndex;
+import com.arteon.match.UserTagSnapshot;
+import com.arteon.service.MatchBatchService;
+import com.arteon.utils.TagVector;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量匹配服务实现
+ * <p>
+ * 把要计算的用户按 id 升序分成若干组，每组只扫描一遍标签索引快照（见 {@link MatchEngine#topKBlock}），
+ * 算完一组就把这一组的结果一次性写进 Redis Hash，并更新任务进度。
+ * 任务进度记录已经算完的最大用户 id，中途失败（或者节点重启）后调用继续执行，从它之后接着算。
+ */
+@Service
+@Slf4j
+public class MatchBatchServiceImpl implements MatchBatchService {
+
+    private static final String KEY_PREFIX = "pm:match:batch:";
+
+    @Resource
+    private UserTagIndex userTagIndex;
+
+    @Resource
+    private MatchEngine matchEngine;
+
+    @Resource
+    private MatchConfig matchConfig;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    /**
+     * 同一时间只执行一个任务，避免和在线匹配抢 CPU，排队的任务太多直接拒绝
+     */
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(16), r -> {
+        Thread thread = new Thread(r, "match-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public MatchBatchJobVO submit(MatchBatchRequest matchBatchRequest) {
+        if (matchBatchRequest == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        int k = matchBatchRequest.getK() == null ? 10 : matchBatchRequest.getK();
+        if (k <= 0 || k > 100) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "k 必须在 1 到 100 之间");
+        }
+        MatchStrategyEnum strategyEnum = matchConfig.getStrategy();
+        if (StringUtils.isNotBlank(matchBatchRequest.getStrategy())) {
+            strategyEnum = MatchStrategyEnum.getEnumByValue(matchBatchRequest.getStrategy());
+            if (strategyEnum == null) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的匹配算法");
+            }
+        }
+        UserTagSnapshot snapshot = userTagIndex.getSnapshot();
+        if (snapshot == null) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "匹配索引未就绪");
+        }
+        String jobId = UUID.randomUUID().toString().replace("-", "");
+        MatchBatchJobVO job = new MatchBatchJobVO();
+        job.setJobId(jobId);
+        job.setStatus(MatchBatchStatusEnum.RUNNING.getValue());
+        job.setK(k);
+        job.setStrategy(strategyEnum.getValue());
+        job.setResultKey(KEY_PREFIX + jobId + ":result");
+        job.setCreateTime(new Date());
+        job.setUpdateTime(job.getCreateTime());
+        if (CollectionUtils.isEmpty(matchBatchRequest.getUserIds())) {
+            job.setTotal(snapshot.size());
+        } else {
+            // 指定的用户按 id 升序去重后保存，继续执行时按同样的顺序往后算
+            long[] userIds = matchBatchRequest.getUserIds().stream().filter(Objects::nonNull)
+                    .mapToLong(Long::longValue).sorted().distinct().toArray();
+            redisTemplate.opsForValue().set(KEY_PREFIX + jobId + ":ids", userIds,
+                    matchConfig.getBatch().getResultTtlHours(), TimeUnit.HOURS);
+            job.setSpecifiedUsers(true);
+            job.setTotal(userIds.length);
+        }
+        this.saveJob(job);
+        this.execute(job);
+        return job;
+    }
+
+    @Override
+    public MatchBatchJobVO getJob(String jobId) {
+        if (StringUtils.isBlank(jobId)) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        MatchBatchJobVO job = (MatchBatchJobVO) redisTemplate.opsForValue().get(KEY_PREFIX + jobId);
+        if (job == null) {
+            throw new BusinessException(ErrorCode.NULL_ERROR, "任务不存在或已过期");
+        }
+        return job;
+    }
+
+    @Override
+    public MatchBatchJobVO resume(String jobId) {
+        MatchBatchJobVO job = this.getJob(jobId);
+        if (MatchBatchStatusEnum.DONE.getValue().equals(job.getStatus())) {
+            return job;
+        }
+        // 任务还在某个节点上执行（锁被持有），不能重复执行；节点挂掉后锁会自动释放
+        if (redissonClient.getLock(KEY_PREFIX + jobId + ":lock").isLocked()) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "任务正在执行");
+        }
+        job.setStatus(MatchBatchStatusEnum.RUNNING.getValue());
+        job.setErrorMessage(null);
+        this.saveJob(job);
+        this.execute(job);
+        return job;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void execute(MatchBatchJobVO job) {
+        try {
+            executor.execute(() -> this.run(job.getJobId()));
+        } catch (RejectedExecutionException e) {
+            job.setStatus(MatchBatchStatusEnum.FAILED.getValue());
+            job.setErrorMessage("排队的任务太多");
+            this.saveJob(job);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "排队的批量匹配任务太多，请稍后继续执行");
+        }
+    }
+
+    /**
+     * 执行任务：从上次算完的用户之后开始，一组一组地算
+     */
+    private void run(String jobId) {
+        RLock lock = redissonClient.getLock(KEY_PREFIX + jobId + ":lock");
+        MatchBatchJobVO job = null;
+        try {
+            // 同一个任务同一时间只能在一个节点上执行
+            if (!lock.tryLock(0, -1, TimeUnit.SECONDS)) {
+                return;
+            }
+            job = (MatchBatchJobVO) redisTemplate.opsForValue().get(KEY_PREFIX + jobId);
+            if (job == null) {
+                return;
+            }
+            long[] userIds = job.isSpecifiedUsers()
+                    ? (long[]) redisTemplate.opsForValue().get(KEY_PREFIX + jobId + ":ids") : null;
+            if (job.isSpecifiedUsers() && userIds == null) {
+                throw new IllegalStateException("任务的用户列表已过期");
+            }
+            MatchStrategyEnum strategyEnum = MatchStrategyEnum.getEnumByValue(job.getStrategy());
+            MatchConfig.Batch config = matchConfig.getBatch();
+            long[] block = new long[Math.max(1, config.getBlockSize())];
+            long start = System.currentTimeMillis();
+            while (!Thread.currentThread().isInterrupted()) {
+                // 每组都取最新的快照，任务执行期间修改的标签也能算进去
+                UserTagSnapshot snapshot = userTagIndex.getSnapshot();
+                if (snapshot == null) {
+                    throw new IllegalStateException("匹配索引未就绪");
+                }
+                int n = nextBlock(snapshot, userIds, job.getLastUserId(), block);
+                if (n == 0) {
+                    break;
+                }
+                long[] blockUserIds = Arrays.copyOf(block, n);
+                TagVector[] queryTags = new TagVector[n];
+                for (int i = 0; i < n; i++) {
+                    queryTags[i] = snapshot.tagsOf(blockUserIds[i]);
+                }
+                long[][] results = matchEngine.topKBlock(snapshot, queryTags, blockUserIds, job.getK(), strategyEnum);
+                // 一组的结果一次写入（没有标签的用户写入空串，表示已经算过）
+                // 结果给数据分析、推送等下游读取，field 和 value 都写纯文本，不用 Java 的序列化格式
+                Map<String, String> fields = new HashMap<>(n * 2);
+                for (int i = 0; i < n; i++) {
+                    fields.put(String.valueOf(blockUserIds[i]), StringUtils.join(results[i], ','));
+                }
+                stringRedisTemplate.opsForHash().putAll(job.getResultKey(), fields);
+                stringRedisTemplate.expire(job.getResultKey(), config.getResultTtlHours(), TimeUnit.HOURS);
+                job.setProcessed(job.getProcessed() + n);
+                job.setLastUserId(blockUserIds[n - 1]);
+                job.setUpdateTime(new Date());
+                this.saveJob(job);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            job.setStatus(MatchBatchStatusEnum.DONE.getValue());
+            job.setUpdateTime(new Date());
+            this.saveJob(job);
+            log.info("match batch job done, jobId: {}, users: {}, cost: {}ms",
+                    jobId, job.getProcessed(), System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.fail(job, "任务被中断");
+        } catch (Exception e) {
+            log.error("match batch job error, jobId: {}", jobId, e);
+            this.fail(job, e.getMessage());
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 取出 lastUserId 之后的下一组用户
+     *
+     * @param userIds 指定的用户（升序），为 null 表示快照中的所有用户
+     * @return 这一组的用户数，为 0 表示已经全部算完
+     */
+    private static int nextBlock(UserTagSnapshot snapshot, long[] userIds, long lastUserId, long[] block) {
+        int n = 0;
+        if (userIds == null) {
+            for (int i = snapshot.ceilingIndex(lastUserId + 1); i < snapshot.size() && n < block.length; i++) {
+                block[n++] = snapshot.userIdAt(i);
+            }
+            return n;
+        }
+        int from = Arrays.binarySearch(userIds, lastUserId + 1);
+        for (int i = from >= 0 ? from : -from - 1; i < userIds.length && n < block.length; i++) {
+            block[n++] = userIds[i];
+        }
+        return n;
+    }
+
+    private void fail(MatchBatchJobVO job, String errorMessage) {
+        if (job == null) {
+            return;
+        }
+        try {
+            job.setStatus(MatchBatchStatusEnum.FAILED.getValue());
+            job.setErrorMessage(errorMessage);
+            job.setUpdateTime(new Date());
+            this.saveJob(job);
+        } catch (Exception e) {
+            log.error("save match batch job error, jobId: {}", job.getJobId(), e);
+        }
+    }
+
+    private void saveJob(MatchBatchJobVO job) {
+        redisTemplate.opsForValue().set(KEY_PREFIX + job.getJobId(), job,
+                matchConfig.getBatch().getResultTtlHours(), TimeUnit.HOURS);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.arteon.service.impl;
+
+import com.arteon.domain.Tag;
+import com.arteon.mapper.TagMapper;
+import com.arteon.service.TagService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Service
+public class TagServiceImpl extends ServiceImpl<TagMapper, Tag> implements TagService {
+
+    @Override
+    public Map<String, Long> getOrCreateTagIds(Collection<String> tagNames) {
+        // 数据库的排序规则不区分大小写，这里也按不区分大小写匹配
+        Map<String, Long> tagIdMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (CollectionUtils.isEmpty(tagNames)) {
+            return tagIdMap;
+        }
+        // 先插入（已存在的忽略），再统一查一次id
+        baseMapper.insertIgnoreBatch(tagNames);
+        QueryWrapper<Tag> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id", "tagName");
+        queryWrapper.in("tagName", tagNames);
+        for (Tag tag : this.list(queryWrapper)) {
+            tagIdMap.put(tag.getTagName(), tag.getId());
+        }
+        return tagIdMap;
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.arteon.service.impl;
+
+import com.arteon.commons.ErrorCode;
+import com.arteon.config.TeamConfig;
+import com.arteon.constant.TeamConstant;
+import com.arteon.domain.Team;
+import com.arteon.domain.UserTeam;
+import com.arteon.exception.BusinessException;
+import com.arteon.service.TeamAdmissionService;
+import com.arteon.service.UserTeamService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@Slf4j
+public class TeamAdmissionServiceImpl implements TeamAdmissionService {
+
+    /**
+     * 计数没加载时最多重试几次（每次加载一个缺失的计数）
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final DefaultRedisScript<Long> ADMIT_SCRIPT = script("lua/team_join_admit.lua");
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = script("lua/team_join_release.lua");
+
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/team_join_load.lua");
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private UserTeamService userTeamService;
+
+    @Resource
+    private TeamConfig teamConfig;
+
+    @Override
+    public void admit(Team team, long userId) {
+        long teamId = team.getId();
+        List<String> keys = keys(teamId, userId);
+        String ttl = String.valueOf(teamConfig.getAdmissionTtlSeconds());
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Long result = stringRedisTemplate.execute(ADMIT_SCRIPT, keys, String.valueOf(userId),
+                    String.valueOf(team.getMaxNum()), String.valueOf(TeamConstant.MAX_JOIN_TEAM_NUM), ttl);
+            int code = result == null ? -1 : result.intValue();
+            switch (code) {
+                case 0:
+                    return;
+                case 1:
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "不能重复加入队伍");
+                case 2:
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "队伍已满");
+                case 3:
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "一个用户最多加入或创建5个队伍");
+                case -1:
+                    this.loadTeam(teamId, keys, ttl);
+                    break;
+                default:
+                    this.loadUser(userId, keys.get(2));
+                    break;
+            }
+        }
+        throw new BusinessException(ErrorCode.SYSTEM_ERROR, "加入队伍失败，请稍后重试");
+    }
+
+    @Override
+    public void release(long teamId, long userId) {
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, keys(teamId, userId), String.valueOf(userId));
+        } catch (Exception e) {
+            // 归还失败就删掉计数，下次从数据库重新加载
+            log.error("release team admission error, teamId: {}, userId: {}", teamId, userId, e);
+            this.evict(teamId, userId);
+        }
+    }
+
+    @Override
+    public void evict(Long teamId, Long... userIds) {
+        List<String> keys = new ArrayList<>();
+        if (teamId != null) {
+            keys.add(String.format(TeamConstant.ADMISSION_TEAM_COUNT_KEY_FORMAT, teamId));
+            keys.add(String.format(TeamConstant.ADMISSION_TEAM_MEMBERS_KEY_FORMAT, teamId));
+        }
+        for (Long userId : userIds) {
+            keys.add(String.format(TeamConstant.ADMISSION_USER_COUNT_KEY_FORMAT, userId));
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.delete(keys);
+        } catch (Exception e) {
+            // 删不掉的计数最多 admissionTtlSeconds 后过期，数据库的条件更新仍然保证不会超员
+            log.error("evict team admission error, keys: {}", keys, e);
+        }
+    }
+
+    /**
+     * 从数据库加载队伍的成员，人数就是成员数
+     */
+    private void loadTeam(long teamId, List<String> keys, String ttl) {
+        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("userId").eq("teamId", teamId);
+        List<String> args = new ArrayList<>();
+        args.add(ttl);
+        for (UserTeam userTeam : userTeamService.list(queryWrapper)) {
+            args.add(String.valueOf(userTeam.getUserId()));
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, keys.subList(0, 2), args.toArray());
+    }
+
+    /**
+     * 从数据库加载用户加入的队伍数，已经加载过就不覆盖
+     */
+    private void loadUser(long userId, String key) {
+        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("userId", userId);
+        long count = userTeamService.count(queryWrapper);
+        stringRedisTemplate.opsForValue().setIfAbsent(key, String.valueOf(count),
+                teamConfig.getAdmissionTtlSeconds(), TimeUnit.SECONDS);
+    }
+
+    private static List<String> keys(long teamId, long userId) {
+        return Arrays.asList(String.format(TeamConstant.ADMISSION_TEAM_COUNT_KEY_FORMAT, teamId),
+                String.format(TeamConstant.ADMISSION_TEAM_MEMBERS_KEY_FORMAT, teamId),
+                String.format(TeamConstant.ADMISSION_USER_COUNT_KEY_FORMAT, userId));
+    }
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+}
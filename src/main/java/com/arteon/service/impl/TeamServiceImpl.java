@@ -1,7 +1,10 @@
 package com.arteon.service.impl;
 
+import com.arteon.cache.TeamMembershipCache;
 import com.arteon.commons.ErrorCode;
 import com.arteon.commons.TeamStatusEnum;
+import com.arteon.config.TeamConfig;
+import com.arteon.constant.TeamConstant;
 import com.arteon.domain.Team;
 import com.arteon.domain.User;
 import com.arteon.domain.UserTeam;
@@ -9,13 +12,17 @@ import com.arteon.domain.dto.TeamQuery;
 import com.arteon.domain.request.TeamJoinRequest;
 import com.arteon.domain.request.TeamQuitRequest;
 import com.arteon.domain.request.TeamUpdateRequest;
+import com.arteon.domain.vo.CursorPageVO;
 import com.arteon.domain.vo.TeamVO;
 import com.arteon.domain.vo.UserVO;
 import com.arteon.exception.BusinessException;
 import com.arteon.mapper.TeamMapper;
+import com.arteon.mapper.UserMapper;
+import com.arteon.service.TeamAdmissionService;
 import com.arteon.service.TeamService;
 import com.arteon.service.UserService;
 import com.arteon.service.UserTeamService;
+import com.arteon.utils.CursorUtils;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import org.apache.commons.collections4.CollectionUtils;
@@ -25,13 +32,21 @@ import org.redisson.api.RedissonClient;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements TeamService {
@@ -45,6 +60,24 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private TeamMapper teamMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    @Resource
+    private TeamConfig teamConfig;
+
+    @Resource
+    private TeamAdmissionService teamAdmissionService;
+
+    @Resource
+    private TeamMembershipCache teamMembershipCache;
+
     /**
      * 创建队伍
      *
@@ -113,6 +146,7 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
         // 8. 插入队伍信息到队伍表
         team.setId(null);
         team.setUserId(userId);
+        team.setMemberCount(1);  // 创建者自己
         boolean result = this.save(team);
         Long teamId = team.getId();
         if (!result || teamId == null) {
@@ -127,6 +161,11 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
         if (!result) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "创建队伍失败");
         }
+        // 创建者加入的队伍数变了，提交后删除准入计数
+        afterCommit(() -> {
+            teamAdmissionService.evict(null, userId);
+            teamMembershipCache.addMember(teamId, userId);
+        });
         return teamId;
     }
 
@@ -178,11 +217,17 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
         // 删除，注意涉及多表，需要多次修改数据库
         // 删除user_team表中的数据
         QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("userId", userId);
+        queryWrapper.eq("teamId", teamId);  // 按队伍删除所有成员，不能按队长删除（会把队长在其他队伍的关系也删掉）
+        Set<Long> memberIds = teamMembershipCache.memberIdsOf(teamId, () -> this.loadMemberIds(teamId));
         boolean removed = userTeamService.remove(queryWrapper);
         if (!removed) {
             throw new BusinessException(ErrorCode.SYSTEM_ERROR, "删除队伍关联信息失败");
         }
+        // 成员加入的队伍数都变了，提交后删除准入计数
+        afterCommit(() -> {
+            teamAdmissionService.evict(teamId, memberIds.toArray(new Long[0]));
+            teamMembershipCache.removeTeam(teamId, memberIds);
+        });
         // 删除队伍（team表中的数据）
         return this.removeById(teamId);
     }
@@ -196,7 +241,48 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
      */
     @Override
     public List<TeamVO> listTeam(TeamQuery teamQuery, User loginUser) {
-        // 先根据条件查询 Team（拼接条件，注意过期时间）
+        // 先根据条件查询 Team
+        QueryWrapper<Team> teamQueryWrapper = this.buildTeamQueryWrapper(teamQuery, loginUser);
+        List<Team> teamList = this.list(teamQueryWrapper);
+        if (CollectionUtils.isEmpty(teamList)) {
+            return new ArrayList<>();  // 什么都没查到，直接返回空的 List
+        }
+        // 然后转换成 TeamVO，并补充缺少的字段，脱敏
+        return this.toTeamVOList(teamList, loginUser.getId(), null);
+    }
+
+    /**
+     * 游标分页查询队伍：按 id 升序取 cursor 之后的 pageSize 个队伍，不查询总数
+     * <p>
+     * 查询条件和 {@link #listTeam} 一样（排除过期的队伍，普通用户不能查私有队伍）
+     *
+     * @param teamQuery 查询条件，用 cursor 和 pageSize 分页
+     * @param loginUser 当前登录用户
+     * @return 这一页的队伍和下一页的游标
+     */
+    @Override
+    public CursorPageVO<TeamVO> listTeamByCursor(TeamQuery teamQuery, User loginUser) {
+        long afterId = CursorUtils.decode(teamQuery.getCursor());
+        int pageSize = teamQuery.getPageSize();
+        QueryWrapper<Team> teamQueryWrapper = this.buildTeamQueryWrapper(teamQuery, loginUser);
+        // 多取一条判断有没有下一页
+        teamQueryWrapper.gt("id", afterId).orderByAsc("id").last("limit " + (pageSize + 1));
+        List<Team> teamList = this.list(teamQueryWrapper);
+        CursorPageVO<TeamVO> cursorPageVO = new CursorPageVO<>();
+        cursorPageVO.setHasMore(teamList.size() > pageSize);
+        if (cursorPageVO.isHasMore()) {
+            teamList = teamList.subList(0, pageSize);
+            cursorPageVO.setNextCursor(CursorUtils.encode(teamList.get(pageSize - 1).getId()));
+        }
+        cursorPageVO.setRecords(teamList.isEmpty() ? new ArrayList<>()
+                : this.toTeamVOList(teamList, loginUser.getId(), null));
+        return cursorPageVO;
+    }
+
+    /**
+     * 拼接查询队伍的条件（注意过期时间和队伍状态）
+     */
+    private QueryWrapper<Team> buildTeamQueryWrapper(TeamQuery teamQuery, User loginUser) {
         QueryWrapper<Team> teamQueryWrapper = new QueryWrapper<>();
         if (teamQuery.getId() != null && teamQuery.getId() > 0) {
             teamQueryWrapper.eq("id", teamQuery.getId());
@@ -232,47 +318,8 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
         if (!userService.isAdmin(loginUser) && statusEnum.equals(TeamStatusEnum.PRIVATE)) {
             throw new BusinessException(ErrorCode.NO_AUTH);
         }
-        // 查询
-        List<Team> teamList = this.list(teamQueryWrapper);
-        if (CollectionUtils.isEmpty(teamList)) {
-            return new ArrayList<>();  // 什么都没查到，直接返回空的 List
-        }
-        // 然后转换成 TeamVO，并补充缺少的字段，脱敏
-        // Team缺少的字段还有三个
-        // createUser - 队伍创建者 √
-        // hasJoin - 当前用户是否入队 √
-        // hasJoinNum - 队伍人数
-        ArrayList<TeamVO> teamVOList = new ArrayList<>();  // 最终要返回的
-        for (Team team : teamList) {
-            // 获取队伍的创建者
-            Long userId = team.getUserId();
-            if (userId == null || userId <= 0) {
-                continue;
-            }
-            User user = userService.getById(userId);
-            if (user == null) {
-                continue;
-            }
-            UserVO userVO = new UserVO();
-            BeanUtils.copyProperties(user, userVO);  // 相当于脱敏了，VO类的本意之一就是去除敏感数据
-            // 将 team 转成 teamVO
-            TeamVO teamVO = new TeamVO();
-            BeanUtils.copyProperties(team, teamVO);
-            teamVO.setCreateUser(userVO);
-            // 判断当前用户是否已入队
-            QueryWrapper<UserTeam> userTeamQueryWrapper = new QueryWrapper<>();
-            userTeamQueryWrapper.eq("userId", loginUser.getId());
-            userTeamQueryWrapper.eq("teamId", team.getId());
-            long count = userTeamService.count(userTeamQueryWrapper);
-            teamVO.setHasJoin(count > 0);
-            // 查询队伍的当前人数
-            userTeamQueryWrapper = new QueryWrapper<>();
-            userTeamQueryWrapper.eq("teamId", team.getId());
-            long num = userTeamService.count(userTeamQueryWrapper);
-            teamVO.setHasJoinNum((int) num);
-            teamVOList.add(teamVO);  // 添加到最后要返回的 List
-        }
-        return teamVOList;
+        teamQueryWrapper.eq("status", statusEnum.getValue());
+        return teamQueryWrapper;
     }
 
     /**
@@ -296,41 +343,7 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
             return new ArrayList<>();  // 什么都没查到，直接返回空的 List
         }
         // 然后转换成 TeamVO，并补充缺少的字段，脱敏
-        // Team缺少的字段还有三个
-        // createUser - 队伍创建者 √
-        // hasJoin - 当前用户是否入队 √
-        // hasJoinNum - 队伍人数
-        ArrayList<TeamVO> teamVOList = new ArrayList<>();  // 最终要返回的
-        for (Team team : teamList) {
-            // 获取队伍的创建者
-            Long userId = team.getUserId();
-            if (userId == null || userId <= 0) {
-                continue;
-            }
-            User user = userService.getById(userId);
-            if (user == null) {
-                continue;
-            }
-            UserVO userVO = new UserVO();
-            BeanUtils.copyProperties(user, userVO);
-            // 将 team 转成 teamVO
-            TeamVO teamVO = new TeamVO();
-            BeanUtils.copyProperties(team, teamVO);
-            teamVO.setCreateUser(userVO);
-            // 判断当前用户是否已入队
-            QueryWrapper<UserTeam> userTeamQueryWrapper = new QueryWrapper<>();
-            userTeamQueryWrapper.eq("userId", id);
-            userTeamQueryWrapper.eq("teamId", team.getId());
-            long count = userTeamService.count(userTeamQueryWrapper);
-            teamVO.setHasJoin(count > 0);
-            // 查询队伍的当前人数
-            userTeamQueryWrapper = new QueryWrapper<>();
-            userTeamQueryWrapper.eq("teamId", team.getId());
-            long num = userTeamService.count(userTeamQueryWrapper);
-            teamVO.setHasJoinNum((int) num);
-            teamVOList.add(teamVO);  // 添加到最后要返回的 List
-        }
-        return teamVOList;
+        return this.toTeamVOList(teamList, id, null);
     }
 
     /**
@@ -341,55 +354,56 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
      */
     @Override
     public List<TeamVO> myJoinTeamList(User loginUser) {
-        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("userId", loginUser.getId());
-        List<UserTeam> userTeamList = userTeamService.list(queryWrapper);
-        ArrayList<Long> joinedTeamIdList = new ArrayList<>();
-        for (UserTeam userTeam : userTeamList) {
-            joinedTeamIdList.add(userTeam.getTeamId());
-        }
-        QueryWrapper<Team> teamQueryWrapper = new QueryWrapper<>();
-        if (joinedTeamIdList.isEmpty()) {
+        long userId = loginUser.getId();
+        // 加入了哪些队伍从成员关系缓存中取
+        Set<Long> joinedTeamIds = teamMembershipCache.teamIdsOf(userId, () -> this.loadJoinedTeamIds(userId));
+        if (joinedTeamIds.isEmpty()) {
             return new ArrayList<>();  // 没加入任何队伍，直接返回空的 List
         }
-        teamQueryWrapper.in("id", joinedTeamIdList);
-        List<Team> teamList = this.list(teamQueryWrapper);
+        List<Team> teamList = this.listByIds(joinedTeamIds);
         if (CollectionUtils.isEmpty(teamList)) {
             return new ArrayList<>();  // 什么都没查到，直接返回空的 List
         }
-        // 然后转换成 TeamVO，并补充缺少的字段，脱敏
-        // Team缺少的字段还有三个
-        // createUser - 队伍创建者 √
-        // hasJoin - 当前用户是否入队 √
-        // hasJoinNum - 队伍人数
+        // 然后转换成 TeamVO，并补充缺少的字段，脱敏（这些队伍都是已加入的，不用再查）
+        return this.toTeamVOList(teamList, userId, joinedTeamIds);
+    }
+
+    /**
+     * 把队伍列表转换成 TeamVO 列表，补充 Team 缺少的三个字段：
+     * createUser - 队伍创建者，hasJoin - 当前用户是否入队，hasJoinNum - 队伍人数
+     * <p>
+     * 不管有多少个队伍都只查一次数据库：一次 IN 查询所有创建者。当前用户加入了哪些队伍从成员关系缓存中取，
+     * 队伍人数直接用 team 表的 memberCount。
+     *
+     * @param teamList      队伍列表
+     * @param loginUserId   当前用户 id
+     * @param joinedTeamIds 已知当前用户加入的队伍 id，为 null 时查询数据库
+     * @return List of TeamVO（创建者不存在的队伍会被跳过）
+     */
+    private List<TeamVO> toTeamVOList(List<Team> teamList, long loginUserId, Set<Long> joinedTeamIds) {
+        // 所有创建者
+        Set<Long> creatorIdSet = teamList.stream().map(Team::getUserId)
+                .filter(userId -> userId != null && userId > 0).collect(Collectors.toSet());
+        Map<Long, User> creatorMap = creatorIdSet.isEmpty() ? new HashMap<>()
+                : userService.listByIds(creatorIdSet).stream().collect(Collectors.toMap(User::getId, user -> user));
+        // 当前用户加入了其中哪些队伍
+        if (joinedTeamIds == null) {
+            joinedTeamIds = teamMembershipCache.teamIdsOf(loginUserId, () -> this.loadJoinedTeamIds(loginUserId));
+        }
         ArrayList<TeamVO> teamVOList = new ArrayList<>();  // 最终要返回的
         for (Team team : teamList) {
-            // 获取队伍的创建者
-            Long userId = team.getUserId();
-            if (userId == null || userId <= 0) {
-                continue;
-            }
-            User user = userService.getById(userId);
+            User user = creatorMap.get(team.getUserId());
             if (user == null) {
                 continue;
             }
             UserVO userVO = new UserVO();
-            BeanUtils.copyProperties(user, userVO);
+            BeanUtils.copyProperties(user, userVO);  // 相当于脱敏了，VO类的本意之一就是去除敏感数据
             // 将 team 转成 teamVO
             TeamVO teamVO = new TeamVO();
             BeanUtils.copyProperties(team, teamVO);
             teamVO.setCreateUser(userVO);
-            // 判断当前用户是否已入队
-            QueryWrapper<UserTeam> userTeamQueryWrapper = new QueryWrapper<>();
-            userTeamQueryWrapper.eq("userId", loginUser.getId());
-            userTeamQueryWrapper.eq("teamId", team.getId());
-            long count = userTeamService.count(userTeamQueryWrapper);
-            teamVO.setHasJoin(count > 0);
-            // 查询队伍的当前人数
-            userTeamQueryWrapper = new QueryWrapper<>();
-            userTeamQueryWrapper.eq("teamId", team.getId());
-            long num = userTeamService.count(userTeamQueryWrapper);
-            teamVO.setHasJoinNum((int) num);
+            teamVO.setHasJoin(joinedTeamIds.contains(team.getId()));
+            teamVO.setHasJoinNum(Optional.ofNullable(team.getMemberCount()).orElse(0));
             teamVOList.add(teamVO);  // 添加到最后要返回的 List
         }
         return teamVOList;
@@ -424,62 +438,91 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
                 throw new BusinessException(ErrorCode.PARAMS_ERROR, "密码错误");
             }
         }
-        // 获取分布式锁
-        RLock lock = redissonClient.getLock("pm:join_team");
+        if (teamConfig.isFastJoinEnabled()) {
+            return this.fastJoinTeam(team, loginUser.getId());
+        }
+        // 按用户和队伍加锁：同一个用户的加入请求串行（校验加入的队伍数量、重复加入），不同队伍之间互不影响。
+        // 固定先锁用户再锁队伍，所有请求加锁顺序一致，不会死锁
+        RLock lock = redissonClient.getMultiLock(
+                redissonClient.getLock(String.format(TeamConstant.JOIN_USER_LOCK_FORMAT, loginUser.getId())),
+                redissonClient.getLock(String.format(TeamConstant.JOIN_TEAM_LOCK_FORMAT, team.getId())));
+        boolean locked = false;
         try {
-            while (true) {
-                if (lock.tryLock(0, -1, TimeUnit.MILLISECONDS)) {
-                    // 最多只能加入5个队伍
-                    QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
-                    queryWrapper.eq("userId", loginUser.getId());
-                    long count = userTeamService.count(queryWrapper);
-                    if (count >= 5) {
-                        throw new BusinessException(ErrorCode.PARAMS_ERROR, "一个用户最多加入或创建5个队伍");
-                    }
-                    // 队伍是否已满
-                    long num = this.countUserNumByTeamId(team.getId());
-                    if (num >= team.getMaxNum()) {
-                        throw new BusinessException(ErrorCode.PARAMS_ERROR, "队伍已满");
-                    }
-                    // 不能重复加入已加入的队伍
-                    QueryWrapper<UserTeam> userTeamQueryWrapper = new QueryWrapper<>();
-                    userTeamQueryWrapper.eq("teamId", teamJoinRequest.getTeamId());
-                    userTeamQueryWrapper.eq("userId", loginUser.getId());
-                    long count1 = userTeamService.count(userTeamQueryWrapper);
-                    if (count1 > 0) {
-                        throw new BusinessException(ErrorCode.PARAMS_ERROR, "不能重复加入队伍");
-                    }
-                    // 校验通过，向关联表添加数据
-                    UserTeam userTeam = new UserTeam();
-                    userTeam.setUserId(loginUser.getId());
-                    userTeam.setTeamId(teamJoinRequest.getTeamId());
-                    userTeam.setJoinTime(new Date());
-                    return userTeamService.save(userTeam);
-                }
+            // 阻塞等待（订阅锁释放的通知，不会空转），超时就放弃
+            locked = lock.tryLock(teamConfig.getJoinLockWaitMillis(), -1, TimeUnit.MILLISECONDS);
+            if (!locked) {
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "加入队伍的人太多，请稍后重试");
+            }
+            // 校验和写入在同一个事务中，在释放锁之前提交
+            boolean saved = this.saveMember(team, loginUser.getId());
+            if (saved) {
+                // 没有经过准入，准入计数已经不准了
+                teamAdmissionService.evict(team.getId(), loginUser.getId());
+                teamMembershipCache.addMember(team.getId(), loginUser.getId());
             }
+            return saved;
         } catch (InterruptedException e) {
             log.error("tryLock error", e);
+            Thread.currentThread().interrupt();
             return false;
         } finally {
-            if (lock.isHeldByCurrentThread()) {
+            // 联锁不支持 isHeldByCurrentThread，自己记录是否加锁成功
+            if (locked) {
                 lock.unlock();
             }
         }
     }
 
     /**
-     * 根据队伍 id查询队伍的人数
-     *
-     * @param id 队伍的 id
-     * @return 该队伍的人数
+     * 用 Redis 准入代替加锁：准入通过再写数据库，写失败归还名额
      */
-    private long countUserNumByTeamId(Long id) {
-        if (id == null || id <= 0) {
-            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+    private boolean fastJoinTeam(Team team, long userId) {
+        teamAdmissionService.admit(team, userId);
+        boolean saved = false;
+        try {
+            saved = this.saveMember(team, userId);
+            if (saved) {
+                teamMembershipCache.addMember(team.getId(), userId);
+            }
+            return saved;
+        } finally {
+            if (!saved) {
+                teamAdmissionService.release(team.getId(), userId);
+            }
         }
-        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("teamId", id);
-        return userTeamService.count(queryWrapper);
+    }
+
+    /**
+     * 添加队伍成员：校验加入的队伍数量和重复加入，人数加一和添加关联数据在同一个事务中
+     * <p>
+     * 数量和重复加入以数据库为准：Redis 准入的计数过期重新加载时，正在进行的准入可能让计数偏小。
+     */
+    private boolean saveMember(Team team, long userId) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            // 锁住用户行，同一个用户的加入在数据库中串行，下面的检查不会被并发的加入绕过
+            userMapper.lockUser(userId);
+            // 最多只能加入5个队伍
+            QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
+            queryWrapper.eq("userId", userId);
+            if (userTeamService.count(queryWrapper) >= TeamConstant.MAX_JOIN_TEAM_NUM) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "一个用户最多加入或创建5个队伍");
+            }
+            // 不能重复加入已加入的队伍
+            queryWrapper.eq("teamId", team.getId());
+            if (userTeamService.count(queryWrapper) > 0) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "不能重复加入队伍");
+            }
+            // 队伍是否已满：人数没满才加一，不用先 count 再判断
+            if (teamMapper.incrementMemberCount(team.getId()) == 0) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "队伍已满");
+            }
+            // 校验通过，向关联表添加数据
+            UserTeam userTeam = new UserTeam();
+            userTeam.setUserId(userId);
+            userTeam.setTeamId(team.getId());
+            userTeam.setJoinTime(new Date());
+            return userTeamService.save(userTeam);
+        }));
     }
 
     /**
@@ -502,53 +545,74 @@ public class TeamServiceImpl extends ServiceImpl<TeamMapper, Team> implements Te
         if (count == 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "未加入该队伍");
         }
-        // 判断队伍剩余的人数
-        long num = this.countUserNumByTeamId(teamId);
         Team team = this.getTeamById(teamId);
-        if (num == 1) {
-            // 队伍只剩一人，删除关联表信息，并直接解散队伍
-            QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("userId", userId);
-            queryWrapper.eq("teamId", teamId);
-            userTeamService.remove(queryWrapper);  // 删除关联表信息
+        // 先删除自己的关联信息，再看关联表中还剩谁（不用 memberCount 判断，它可能和关联表有偏差）
+        userTeamService.remove(userTeamQueryWrapper);
+        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("teamId", teamId);
+        queryWrapper.last("order by joinTime asc limit 1");
+        UserTeam nextMember = userTeamService.getOne(queryWrapper, false);
+        if (nextMember == null) {
+            // 没有其他成员了，直接解散队伍
             this.removeById(teamId);  // 删除队伍
+            afterCommit(() -> {
+                teamAdmissionService.evict(teamId, userId);
+                teamMembershipCache.removeTeam(teamId, Collections.singleton(userId));
+            });
             return true;
-        } else if (num >= 2) {
-            // 队伍还有至少两人
-            // 判断退出的是不是队长
-            if (userId.equals(team.getUserId())) {
-                // 是队长，队长转移，删除信息
-                // 查询队伍中加入时间最早的成员，将队长转移给他
-                QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
-                queryWrapper.eq("teamId", teamId);
-                queryWrapper.last("order by joinTime asc limit 2");
-                List<UserTeam> userTeamList = userTeamService.list(queryWrapper);
-                if (userTeamList == null || userTeamList.size() < 2) {
-                    throw new BusinessException(ErrorCode.SYSTEM_ERROR);
-                }
-                Long nextLeaderId = userTeamList.get(1).getUserId();
-                // 更新队长
-                Team updateTeam = new Team();
-                updateTeam.setUserId(nextLeaderId);
-                updateTeam.setId(teamId);
-                boolean b = this.updateById(updateTeam);
-                if (!b) {
-                    throw new BusinessException(ErrorCode.SYSTEM_ERROR, "更新队长失败");
-                }
-                // 删除信息
-                QueryWrapper<UserTeam> userTeamQueryWrapper1 = new QueryWrapper<>();
-                userTeamQueryWrapper1.eq("userId", userId);
-                userTeamQueryWrapper1.eq("teamId", teamId);
-                return userTeamService.remove(userTeamQueryWrapper1);
-            } else {
-                // 不是队长，直接删除信息
-                QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
-                queryWrapper.eq("userId", userId);
-                queryWrapper.eq("teamId", teamId);
-                return userTeamService.remove(queryWrapper);  // 删除关联表信息
+        }
+        // 队伍还有其他人
+        teamMapper.decrementMemberCount(teamId);
+        // 退出的是队长，把队长转移给加入时间最早的成员
+        if (userId.equals(team.getUserId())) {
+            Team updateTeam = new Team();
+            updateTeam.setUserId(nextMember.getUserId());
+            updateTeam.setId(teamId);
+            boolean b = this.updateById(updateTeam);
+            if (!b) {
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "更新队长失败");
             }
         }
-        throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        // 提交后归还准入名额
+        afterCommit(() -> {
+            teamAdmissionService.release(teamId, userId);
+            teamMembershipCache.removeMember(teamId, userId);
+        });
+        return true;
+    }
+
+    /**
+     * 从数据库查询用户加入（包括创建）的队伍 id
+     */
+    private List<Long> loadJoinedTeamIds(long userId) {
+        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("teamId").eq("userId", userId);
+        return userTeamService.list(queryWrapper).stream().map(UserTeam::getTeamId).collect(Collectors.toList());
+    }
+
+    /**
+     * 从数据库查询队伍成员的用户 id
+     */
+    private List<Long> loadMemberIds(long teamId) {
+        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("userId").eq("teamId", teamId);
+        return userTeamService.list(queryWrapper).stream().map(UserTeam::getUserId).collect(Collectors.toList());
+    }
+
+    /**
+     * 当前事务提交后再执行（修改 Redis 中的数据），没有事务时直接执行
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     /**
@@ -1,34 +1,51 @@
 package com.arteon.service.impl;
 
+import com.arteon.cache.AccessTracker;
+import com.arteon.cache.ReadThroughCache;
 import com.arteon.commons.ErrorCode;
+import com.arteon.commons.MatchStrategyEnum;
 import com.arteon.constant.UserConstant;
+import com.arteon.config.CacheConfig;
+import com.arteon.config.MatchConfig;
 import com.arteon.domain.User;
+import com.arteon.domain.vo.CursorPageVO;
+import com.arteon.domain.vo.MatchRecallVO;
+import com.arteon.event.UserTagChangeEvent;
 import com.arteon.exception.BusinessException;
 import com.arteon.mapper.UserMapper;
+import com.arteon.match.MatchEngine;
+import com.arteon.match.MatchResultCache;
+import com.arteon.match.MinHashLshIndex;
+import com.arteon.match.TagInvertedIndex;
+import com.arteon.match.UserTagIndex;
+import com.arteon.match.UserTagSnapshot;
 import com.arteon.service.UserService;
-import com.arteon.utils.AlgorithmUtils;
+import com.arteon.service.UserTagService;
+import com.arteon.utils.CursorUtils;
+import com.arteon.utils.SimilarityStrategy;
+import com.arteon.utils.TagVector;
+import com.arteon.utils.TopKHeap;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.DigestUtils;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static com.arteon.constant.UserConstant.ADMIN_ROLE;
+import static com.arteon.constant.UserConstant.RECOMMEND_CURSOR_KEY_FORMAT;
+import static com.arteon.constant.UserConstant.RECOMMEND_KEY_FORMAT;
 import static com.arteon.constant.UserConstant.USER_LOGIN_STATE;
 
 @Service
@@ -39,7 +56,31 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     private UserMapper userMapper;
 
     @Resource
-    private RedisTemplate<String, Object> redisTemplate;
+    private UserTagIndex userTagIndex;
+
+    @Resource
+    private MatchEngine matchEngine;
+
+    @Resource
+    private UserTagService userTagService;
+
+    @Resource
+    private MatchResultCache matchResultCache;
+
+    @Resource
+    private MatchConfig matchConfig;
+
+    @Resource
+    private ReadThroughCache readThroughCache;
+
+    @Resource
+    private CacheConfig cacheConfig;
+
+    @Resource
+    private AccessTracker accessTracker;
+
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
 
     /**
      * 盐值，混淆密码
@@ -47,6 +88,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     private static final String SALT = "HelloWorld";
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public long userRegister(String userAccount, String userPassword, String checkPassword, String planetCode) {
         // 1. 校验参数合理性
         if (StringUtils.isAnyBlank(userAccount, userPassword, checkPassword, planetCode)) {
@@ -96,6 +138,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (!saveResult) {
             return -1;
         }
+        // 同步用户标签关系表，并通知匹配索引（事务提交后处理）
+        userTagService.syncUserTags(user.getId(), user.getTags());
+        applicationEventPublisher.publishEvent(new UserTagChangeEvent(this, user.getId(), user.getTags()));
         return user.getId();  // 成功返回新用户id
     }
 
@@ -165,7 +210,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     }
 
     /**
-     * 通过标签列表查询用户（要求用户包含列表中所有的标签）
+     * 通过标签列表查询用户（要求用户包含列表中所有的标签）（查user_tag关系表版）
      *
      * @param tagNameList 标签名列表
      * @return List Of User
@@ -176,19 +221,20 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (CollectionUtils.isEmpty(tagNameList)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        // 拼接查询条件
-        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+        // 走user_tag表的索引，按用户分组统计命中的标签数。
+        // tag.tagName 的比较不区分大小写，去重也要不区分大小写，否则 ["Java", "java"] 只能命中一个标签却要求命中两个
+        Map<String, String> distinctTagNameMap = new LinkedHashMap<>();
         for (String tagName : tagNameList) {
-            queryWrapper = queryWrapper.like("tags", tagName);
+            distinctTagNameMap.putIfAbsent(tagName.toLowerCase(Locale.ROOT), tagName);
         }
-        // 查询
-        List<User> userList = userMapper.selectList(queryWrapper);
+        List<String> distinctTagNameList = new ArrayList<>(distinctTagNameMap.values());
+        List<User> userList = userMapper.listUsersByAllTags(distinctTagNameList, distinctTagNameList.size());
         // 脱敏并返回
         return userList.stream().map(this::getSafetyUser).collect(Collectors.toList());
     }
 
     /**
-     * 通过标签列表查询用户（要求用户包含列表中所有的标签）（内存查询版）
+     * 通过标签列表查询用户（要求用户包含列表中所有的标签）（内存查询版，索引不可用时流式扫描数据库）
      *
      * @param tagNameList 标签名列表
      * @return List Of User
@@ -199,24 +245,22 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (CollectionUtils.isEmpty(tagNameList)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        // 查询所有用户
-        List<User> userList = userMapper.selectList(null);
-        // 遍历每一个用户，判断其标签是否符合要求
-        Gson gson = new Gson();  // gson序列化对象
-        return userList.stream().filter(user -> {
-            String tagsJsonStr = user.getTags();
-            // 使用gson对象将json串反序列化
-            Set<String> tagNameSet = gson.fromJson(tagsJsonStr, new TypeToken<Set<String>>() {
-            }.getType());
-            // 判断是否为空（避免NPE是程序员的义务……）
-            tagNameSet = Optional.ofNullable(tagNameSet).orElse(new HashSet<>()); // Java8新增语法，如果一个对象为空就给它一个默认值
-            for (String tagName : tagNameList) {
-                if (!tagNameSet.contains(tagName)) {
-                    return false;  // 这里返回的boolean类型是stream流过滤是否通过
-                }
+        // 倒排索引建好了就直接求交集，只查询命中的用户
+        TagInvertedIndex invertedIndex = userTagIndex.getInvertedIndex();
+        if (invertedIndex != null) {
+            int[] tagIds = userTagIndex.encodeForQuery(new ArrayList<>(new LinkedHashSet<>(tagNameList)));
+            return this.listSafetyUsersByIds(invertedIndex.search(tagIds));
+        }
+        // 流式扫描所有用户的标签，逐行判断是否符合要求，只记下命中的id，不把所有用户同时放在内存里
+        Set<String> queryTagNameSet = new HashSet<>(tagNameList);
+        List<Long> matchedIdList = new ArrayList<>();
+        userMapper.scanUserTags(resultContext -> {
+            User user = resultContext.getResultObject();
+            if (UserTagIndex.parseTags(user.getTags()).containsAll(queryTagNameSet)) {
+                matchedIdList.add(user.getId());
             }
-            return true;
-        }).map(this::getSafetyUser).collect(Collectors.toList());
+        });
+        return this.listSafetyUsersByIds(matchedIdList.stream().mapToLong(Long::longValue).toArray());
     }
 
     @Override
@@ -239,6 +283,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      * @param loginUser 当前登录的用户（鉴权用）
      */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public int updateUser(User user, User loginUser) {
         // 判断参数是否为空
         if (user == null || user.getId() == null) {
@@ -254,9 +299,31 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (i == 0) {
             throw new BusinessException(ErrorCode.NULL_ERROR);
         }
+        // 修改了标签就同步用户标签关系表，并通知匹配索引更新、匹配结果失效（事务提交后处理）
+        if (user.getTags() != null) {
+            userTagService.syncUserTags(user.getId(), user.getTags());
+            applicationEventPublisher.publishEvent(new UserTagChangeEvent(this, user.getId(), user.getTags()));
+        }
         return i;
     }
 
+    /**
+     * 删除用户（逻辑删除）
+     *
+     * @param id 要删除的用户id
+     * @return true-删除成功，false-用户不存在
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean deleteUser(long id) {
+        boolean result = this.removeById(id);
+        // 通知匹配索引移除该用户（事务提交后处理）
+        if (result) {
+            applicationEventPublisher.publishEvent(UserTagChangeEvent.deleted(this, id));
+        }
+        return result;
+    }
+
     @Override
     public boolean isAdmin(User loginUser) {
         if (loginUser == null) {
@@ -281,65 +348,202 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
     @Override
     public Page<User> recommendUsers(long pageNum, long pageSize, User loginUser) {
-        // 如果redis中有数据，就直接从redis中取数据
-        ValueOperations<String, Object> ops = redisTemplate.opsForValue();
-        String redisKey = String.format("pm:user:recommend:%s", loginUser.getId());  // 格式化一个redis的key，以冒号分隔是redis常见命名方式
-        Page<User> userPage = (Page<User>) ops.get(redisKey);
-        // 如果取到了数据就直接返回
-        if (userPage != null) {
-            return userPage;
-        }
-        // redis中没有数据，查询数据库并添加到缓存
+        if (pageNum <= 0 || pageSize <= 0 || pageSize > 100) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        accessTracker.recordRecommend(loginUser.getId(), pageNum, pageSize);
+        // 按用户、页码和页大小缓存，未命中时同一个 key 只有一个请求查数据库
+        String redisKey = String.format(RECOMMEND_KEY_FORMAT, loginUser.getId(), pageNum, pageSize);
         // MP实现分页查询非常方便，UserService都有现成的方法，直接传一个Page对象即可
-        userPage = this.page(new Page<>(pageNum, pageSize));
-        try {
-            ops.set(redisKey, userPage, 60, TimeUnit.SECONDS);  // 60秒过期
-        } catch (Exception e) {
-            log.error("redis set error", e);
+        return readThroughCache.get(redisKey, cacheConfig.getRecommendTtlSeconds(),
+                () -> this.page(new Page<>(pageNum, pageSize)));
+    }
+
+    @Override
+    public CursorPageVO<User> recommendUsersByCursor(String cursor, long pageSize, User loginUser) {
+        if (pageSize <= 0 || pageSize > 100) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        return userPage;
+        long afterId = CursorUtils.decode(cursor);
+        // 这一页和当前用户无关，不按用户缓存，所有用户共用
+        String redisKey = String.format(RECOMMEND_CURSOR_KEY_FORMAT, afterId, pageSize);
+        return readThroughCache.get(redisKey, cacheConfig.getRecommendTtlSeconds(), () -> {
+            // 走主键索引从 afterId 往后取，多取一条判断有没有下一页
+            QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+            queryWrapper.gt("id", afterId).orderByAsc("id").last("limit " + (pageSize + 1));
+            List<User> userList = this.list(queryWrapper);
+            boolean hasMore = userList.size() > pageSize;
+            if (hasMore) {
+                userList = userList.subList(0, (int) pageSize);
+            }
+            CursorPageVO<User> cursorPageVO = new CursorPageVO<>();
+            cursorPageVO.setRecords(userList.stream().map(this::getSafetyUser).collect(Collectors.toList()));
+            cursorPageVO.setHasMore(hasMore);
+            if (hasMore) {
+                cursorPageVO.setNextCursor(CursorUtils.encode(userList.get(userList.size() - 1).getId()));
+            }
+            return cursorPageVO;
+        });
     }
 
     /**
-     * 使用编辑距离算法计算两个用户标签的相似度，为当前用户推荐相似用户
+     * 计算两个用户标签的相似度，为当前用户推荐相似用户
      *
-     * @param num  返回的用户数量
-     * @param user 当前用户
+     * @param num          返回的用户数量
+     * @param strategyEnum 相似度算法，为null时使用配置的默认算法（编辑距离）
+     * @param user         当前用户
      * @return List of User
      */
     @Override
-    public List<User> matchUsers(long num, User user) {
-        // 查询所有用户，提取所有的tags作为一个List<String>
-        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-        queryWrapper.select("id", "tags");  // 只查询这两个字段
-        queryWrapper.isNotNull("tags");       // 要求tags字段不能为空
-        List<User> userList = this.list(queryWrapper);
+    public List<User> matchUsers(long num, MatchStrategyEnum strategyEnum, User user) {
+        if (strategyEnum == null) {
+            strategyEnum = matchConfig.getStrategy();
+        }
+        accessTracker.recordMatch(user.getId(), num, strategyEnum);
+        // 先查缓存，没有再计算并放入缓存
+        long[] userIds = matchResultCache.get(user.getId(), (int) num, strategyEnum);
+        if (userIds == null) {
+            // 计算前取版本号，计算期间标签被改过（结果被失效）就不写入缓存
+            String version = matchResultCache.version(user.getId());
+            // 再从数据库查标签：session 中的标签可能是旧的，索引中的标签可能还没应用最新的修改，
+            // 用旧标签算出来的结果能通过版本号检查，会一直缓存到过期
+            User currentUser = this.getById(user.getId());
+            String tags = currentUser == null ? user.getTags() : currentUser.getTags();
+            userIds = this.computeMatchUserIds(user.getId(), tags, (int) num, strategyEnum);
+            matchResultCache.put(user.getId(), (int) num, strategyEnum, userIds, version);
+        }
+        return this.listSafetyUsersByIds(userIds);
+    }
+
+    /**
+     * 重新计算用户的匹配结果并放入缓存（后台重算用）
+     *
+     * @param userId       用户id
+     * @param num          返回的用户数量
+     * @param strategyEnum 相似度算法
+     */
+    @Override
+    public void refreshMatchCache(long userId, int num, MatchStrategyEnum strategyEnum) {
+        // 先取版本号再查标签：查到的标签不会比版本号旧
+        String version = matchResultCache.version(userId);
+        User user = this.getById(userId);
+        if (user == null || UserTagIndex.parseTags(user.getTags()).isEmpty()) {
+            return;
+        }
+        // 标签刚改过，索引里的可能还是旧的，以数据库为准
+        long[] userIds = this.computeMatchUserIds(userId, user.getTags(), num, strategyEnum);
+        matchResultCache.put(userId, num, strategyEnum, userIds, version);
+    }
+
+    /**
+     * 计算最相似的num个用户
+     *
+     * @param userId       当前用户id
+     * @param tags         当前用户的标签json（从数据库查到的最新标签）
+     * @param num          返回的用户数量
+     * @param strategyEnum 相似度算法
+     * @return 用户id，按相似度从高到低排序
+     */
+    private long[] computeMatchUserIds(long userId, String tags, int num, MatchStrategyEnum strategyEnum) {
+        UserTagSnapshot snapshot = userTagIndex.getSnapshot();
+        // 索引还没建好，回退到查数据库
+        if (snapshot == null) {
+            return this.matchUsersFromDb(userId, tags, num, strategyEnum);
+        }
+        // 获取当前用户的标签
+        TagVector currentUserTags = TagVector.of(userTagIndex.encodeForQuery(UserTagIndex.parseTags(tags)));
+        if (currentUserTags.isEmpty()) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "当前用户没有标签");
+        }
+        // 开启了近似匹配就只对LSH候选打分，否则扫描内存中的全部索引，只保留最相似的num个用户
+        // 一定要先取快照再取LSH索引：索引更新时先发布LSH再发布快照，这样拿到的LSH不会漏掉快照里的修改
+        MinHashLshIndex lshIndex = userTagIndex.getLshIndex();
+        if (lshIndex != null) {
+            return matchEngine.topKApproximate(snapshot, lshIndex, currentUserTags, userId, num, strategyEnum);
+        }
+        return matchEngine.topK(snapshot, currentUserTags, userId, num, strategyEnum);
+    }
+
+    /**
+     * 评估近似匹配的召回率（Recall@K），用于选择LSH的band和row参数
+     *
+     * @param k            每次匹配返回的用户数
+     * @param sampleSize   抽样的用户数
+     * @param strategyEnum 相似度算法，为null时使用配置的默认算法
+     */
+    @Override
+    public MatchRecallVO evaluateMatchRecall(int k, int sampleSize, MatchStrategyEnum strategyEnum) {
+        UserTagSnapshot snapshot = userTagIndex.getSnapshot();
+        MinHashLshIndex lshIndex = userTagIndex.getLshIndex();
+        if (snapshot == null || lshIndex == null) {
+            throw new BusinessException(ErrorCode.NULL_ERROR, "未开启近似匹配");
+        }
+        return matchEngine.evaluateRecall(snapshot, lshIndex, k, sampleSize, strategyEnum);
+    }
+
+    /**
+     * 匹配用户（查数据库版，索引没建好或者关闭时使用）
+     */
+    private long[] matchUsersFromDb(long userId, String tags, int num, MatchStrategyEnum strategyEnum) {
+        // 获取当前用户的tags
+        TagVector currentUserTags = TagVector.of(userTagIndex.encode(tags));
+        if (currentUserTags.isEmpty()) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "当前用户没有标签");
+        }
+        // 没有索引就没有IDF统计，余弦相似度按等权重计算
+        SimilarityStrategy strategy = matchEngine.getStrategy(strategyEnum, null).forQuery(currentUserTags);
+        // 流式扫描所有用户的标签，逐行计算相似度后就丢弃，用有界堆只保留最相似的num个用户（相似度相同时id小的优先）
+        TopKHeap topKHeap = new TopKHeap(num);
+        long[] scanned = new long[1];
+        userMapper.scanUserTags(resultContext -> {
+            User u = resultContext.getResultObject();
+            scanned[0]++;
+            // 排除自己
+            if (u.getId() == userId) {
+                return;
+            }
+            // 将标签Json串编码
+            TagVector userTags = TagVector.of(userTagIndex.encode(u.getTags()));
+            if (userTags.isEmpty()) {
+                return;
+            }
+            double bound = topKHeap.cutoff();
+            double distance = strategy.distance(userTags, currentUserTags, bound);
+            if (distance <= bound) {
+                topKHeap.offer(u.getId(), distance);
+            }
+        });
         // 如果没查到数据直接抛异常
-        if (userList == null || userList.isEmpty()) {
+        if (scanned[0] == 0) {
             throw new BusinessException(ErrorCode.NULL_ERROR);
         }
-        Gson gson = new Gson();
-        // 获取当前用户的tags
-        List<String> currentUserTagList = gson.fromJson(user.getTags(), new TypeToken<List<String>>() {
-        }.getType());
-        // 依次使用编辑距离算法匹配，使用TreeMap存储结果，相似度作为key，User作为value，然后取前num个User返回即可
-        TreeMap<Integer, User> treeMap = new TreeMap<>();
-        for (User u : userList) {
-            String tags = u.getTags();
-            // 将标签Json串转成List
-            List<String> userTagList = gson.fromJson(tags, new TypeToken<List<String>>() {
-            }.getType());
-            // 使用编辑距离算法计算用户相似度
-            int i = AlgorithmUtils.minDistance(userTagList, currentUserTagList);
-            treeMap.put(i, u);
+        return topKHeap.sortedIds();
+    }
+
+    /**
+     * 根据id批量查询用户（每1000个id一次IN查询），并按传入id的顺序返回脱敏后的用户
+     *
+     * @param ids 用户id，按需要的顺序排好
+     * @return List of User
+     */
+    private List<User> listSafetyUsersByIds(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        List<Long> idList = Arrays.stream(ids).boxed().collect(Collectors.toList());
+        Map<Long, User> userMap = new HashMap<>();
+        for (int from = 0; from < idList.size(); from += 1000) {
+            List<Long> batch = idList.subList(from, Math.min(from + 1000, idList.size()));
+            for (User u : this.listByIds(batch)) {
+                userMap.put(u.getId(), u);
+            }
         }
         ArrayList<User> finalUserList = new ArrayList<>();
-        Set<Integer> keySet = treeMap.keySet();  // 经过查阅资料，虽然返回的是Set，但是源码实现保证了有序
-        for (Integer i : keySet) {
-            if (finalUserList.size() >= num) {
-                break;
+        for (Long id : idList) {
+            User u = userMap.get(id);
+            if (u != null) {  // 查询期间可能被删除了
+                finalUserList.add(this.getSafetyUser(u));
             }
-            finalUserList.add(this.getSafetyUser(treeMap.get(i)));
         }
         return finalUserList;
     }
@@ -0,0 +1,80 @@
+package com.arteon.service.impl;
+
+import com.arteon.domain.UserTag;
+import com.arteon.mapper.UserTagMapper;
+import com.arteon.match.UserTagIndex;
+import com.arteon.service.TagService;
+import com.arteon.service.UserTagService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+public class UserTagServiceImpl extends ServiceImpl<UserTagMapper, UserTag> implements UserTagService {
+
+    @Resource
+    private TagService tagService;
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void syncUserTags(long userId, String tagsJson) {
+        // 整体删除再重建，用户的标签不多，比逐个对比简单
+        QueryWrapper<UserTag> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("userId", userId);
+        this.remove(queryWrapper);
+        Set<String> tagNameSet = new LinkedHashSet<>(UserTagIndex.parseTags(tagsJson));
+        if (tagNameSet.isEmpty()) {
+            return;
+        }
+        Map<String, Long> tagIdMap = tagService.getOrCreateTagIds(tagNameSet);
+        List<UserTag> userTagList = new ArrayList<>();
+        for (Long tagId : new LinkedHashSet<>(tagIdMap.values())) {
+            UserTag userTag = new UserTag();
+            userTag.setUserId(userId);
+            userTag.setTagId(tagId);
+            userTagList.add(userTag);
+        }
+        baseMapper.insertIgnoreBatch(userTagList);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int insertUserTags(Map<Long, String> userTagsMap) {
+        // 先收集这一批用到的所有标签，一次拿到id
+        Map<Long, Set<String>> userTagNameMap = new HashMap<>();
+        Set<String> allTagNames = new LinkedHashSet<>();
+        userTagsMap.forEach((userId, tagsJson) -> {
+            Set<String> tagNameSet = new LinkedHashSet<>(UserTagIndex.parseTags(tagsJson));
+            userTagNameMap.put(userId, tagNameSet);
+            allTagNames.addAll(tagNameSet);
+        });
+        Map<String, Long> tagIdMap = tagService.getOrCreateTagIds(allTagNames);
+        List<UserTag> userTagList = new ArrayList<>();
+        userTagNameMap.forEach((userId, tagNameSet) -> {
+            for (String tagName : tagNameSet) {
+                Long tagId = tagIdMap.get(tagName);
+                if (tagId == null) {
+                    continue;
+                }
+                UserTag userTag = new UserTag();
+                userTag.setUserId(userId);
+                userTag.setTagId(tagId);
+                userTagList.add(userTag);
+            }
+        });
+        if (userTagList.isEmpty()) {
+            return 0;
+        }
+        return baseMapper.insertIgnoreBatch(userTagList);
+    }
+
+}
@@ -44,4 +44,81 @@ public class AlgorithmUtils {
         return d[n][m];
     }
 
-}
\ No newline at end of file
+    /**
+     * 每个线程复用的两行滚动数组，避免每次计算都分配 (n+1)*(m+1) 的矩阵
+     */
+    private static final ThreadLocal<int[][]> ROW_BUFFER = ThreadLocal.withInitial(() -> new int[2][32]);
+
+    /**
+     * 编辑距离算法（标签已编码成 int 编号的版本，省去字符串比较）
+     *
+     * @param tags1 第一组标签编号
+     * @param tags2 第二组标签编号
+     * @return 两组标签的相似度，值越小越相似
+     */
+    public static int minDistance(int[] tags1, int[] tags2) {
+        return minDistance(tags1, tags2, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 带剪枝的编辑距离算法
+     * <p>
+     * 只用两行滚动数组计算。每一行的最小值不会比上一行小，所以一旦某一行所有格子都超过了 bound，
+     * 最终结果一定超过 bound，直接提前返回。全量匹配时绝大多数候选都进不了前 K 名，可以省掉大部分计算。
+     *
+     * @param tags1 第一组标签编号
+     * @param tags2 第二组标签编号
+     * @param bound 淘汰线，一般是 Top-K 堆当前最差的分值
+     * @return 结果不超过 bound 时返回准确的编辑距离，否则返回 bound + 1（表示比淘汰线更差）
+     */
+    public static int minDistance(int[] tags1, int[] tags2, int bound) {
+        int n = tags1.length;
+        int m = tags2.length;
+
+        // 长度差是编辑距离的下界
+        if (Math.abs(n - m) > bound) {
+            return bound + 1;
+        }
+        if (n * m == 0) {
+            return n + m;
+        }
+
+        int[][] rows = ROW_BUFFER.get();
+        if (rows[0].length < m + 1) {
+            rows = new int[2][m + 1];
+            ROW_BUFFER.set(rows);
+        }
+        int[] prev = rows[0];
+        int[] cur = rows[1];
+        for (int j = 0; j < m + 1; j++) {
+            prev[j] = j;
+        }
+
+        for (int i = 1; i < n + 1; i++) {
+            cur[0] = i;
+            int rowMin = i;
+            int tag = tags1[i - 1];
+            for (int j = 1; j < m + 1; j++) {
+                int left = prev[j] + 1;
+                int down = cur[j - 1] + 1;
+                int left_down = prev[j - 1];
+                if (tag != tags2[j - 1]) {
+                    left_down += 1;
+                }
+                int d = Math.min(left, Math.min(down, left_down));
+                cur[j] = d;
+                if (d < rowMin) {
+                    rowMin = d;
+                }
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[m] > bound ? bound + 1 : prev[m];
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.arteon.utils;
+
+import com.arteon.commons.ErrorCode;
+import com.arteon.exception.BusinessException;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页的游标编码
+ * <p>
+ * 游标里是上一页最后一条数据的 id（按 id 升序分页），编码成 Base64 交给前端原样传回，
+ * 前端不依赖游标的内容，以后换成别的排序字段也不影响接口。
+ */
+public class CursorUtils {
+
+    private static final String PREFIX = "id:";
+
+    private CursorUtils() {
+    }
+
+    public static String encode(long afterId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + afterId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标
+     *
+     * @param cursor 游标，为空表示第一页
+     * @return 上一页最后一条数据的 id，第一页返回 0
+     */
+    public static long decode(String cursor) {
+        if (StringUtils.isBlank(cursor)) {
+            return 0;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (value.startsWith(PREFIX)) {
+                return Long.parseLong(value.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // 下面统一抛出
+        }
+        throw new BusinessException(ErrorCode.PARAMS_ERROR, "无效的游标");
+    }
+
+}
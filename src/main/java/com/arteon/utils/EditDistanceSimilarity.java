@@ -0,0 +1,16 @@
+package com.arteon.utils;
+
+/**
+ * 编辑距离（和标签顺序有关，结果最准确但最慢）
+ */
+public class EditDistanceSimilarity implements SimilarityStrategy {
+
+    public static final EditDistanceSimilarity INSTANCE = new EditDistanceSimilarity();
+
+    @Override
+    public double distance(TagVector candidate, TagVector query, double bound) {
+        int intBound = bound >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) bound;
+        return AlgorithmUtils.minDistance(candidate.getTagIds(), query.getTagIds(), intBound);
+    }
+
+}
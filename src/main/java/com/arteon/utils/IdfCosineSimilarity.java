@@ -0,0 +1,118 @@
+package com.arteon.utils;
+
+/**
+ * IDF 加权的余弦相似度：越少人有的标签权重越高，两个人都有冷门标签比都有热门标签更相似
+ * <p>
+ * 返回的距离为 1 - cos，只遍历位图中为 1 的位。
+ * <p>
+ * 模长的平方不在每次比较时重新计算：查询的用 {@link #forQuery} 算一次，候选的可以由快照按下标预先算好传进来。
+ */
+public class IdfCosineSimilarity implements SimilarityStrategy {
+
+    /**
+     * 每个标签编号的 IDF 权重，为 null 表示所有标签权重相同
+     */
+    private final double[] idf;
+
+    /**
+     * 不在 idf 中的标签（字典里没有或者是新标签）的权重
+     */
+    private final double unknownWeight;
+
+    /**
+     * 快照中每个用户标签的模长平方（按下标），为 null 表示没有预先算好
+     */
+    private final double[] candidateSquaredNorms;
+
+    /**
+     * {@link #forQuery} 绑定的查询，为 null 表示没有绑定
+     */
+    private final TagVector query;
+
+    private final double querySquaredNorm;
+
+    public IdfCosineSimilarity(double[] idf, double unknownWeight) {
+        this(idf, unknownWeight, null);
+    }
+
+    /**
+     * @param candidateSquaredNorms 快照中每个用户标签的模长平方（按下标，用同样的 idf 算出来的）
+     */
+    public IdfCosineSimilarity(double[] idf, double unknownWeight, double[] candidateSquaredNorms) {
+        this(idf, unknownWeight, candidateSquaredNorms, null, 0);
+    }
+
+    private IdfCosineSimilarity(double[] idf, double unknownWeight, double[] candidateSquaredNorms,
+                                TagVector query, double querySquaredNorm) {
+        this.idf = idf;
+        this.unknownWeight = unknownWeight;
+        this.candidateSquaredNorms = candidateSquaredNorms;
+        this.query = query;
+        this.querySquaredNorm = querySquaredNorm;
+    }
+
+    @Override
+    public SimilarityStrategy forQuery(TagVector query) {
+        return new IdfCosineSimilarity(idf, unknownWeight, candidateSquaredNorms, query, squaredNorm(query));
+    }
+
+    @Override
+    public double distance(TagVector candidate, TagVector query, double bound) {
+        return this.distance(candidate, -1, query, bound);
+    }
+
+    @Override
+    public double distance(TagVector candidate, int candidateIndex, TagVector query, double bound) {
+        long[] a = candidate.getBits();
+        long[] b = query.getBits();
+        int n = Math.min(a.length, b.length);
+        double dot = 0;
+        for (int i = 0; i < n; i++) {
+            dot += squaredWeightSum(a[i] & b[i], i);
+        }
+        if (dot == 0) {
+            return 1;
+        }
+        double candidateNorm = candidateSquaredNorms != null && candidateIndex >= 0
+                ? candidateSquaredNorms[candidateIndex] : squaredNorm(candidate);
+        double queryNorm = query == this.query ? querySquaredNorm : squaredNorm(query);
+        return 1 - dot / Math.sqrt(candidateNorm * queryNorm);
+    }
+
+    /**
+     * 标签的 IDF 加权模长的平方
+     */
+    public double squaredNorm(TagVector vector) {
+        long[] bits = vector.getBits();
+        double sum = 0;
+        int known = 0;
+        for (int i = 0; i < bits.length; i++) {
+            sum += squaredWeightSum(bits[i], i);
+            known += Long.bitCount(bits[i]);
+        }
+        int unknown = vector.getCardinality() - known;
+        return sum + unknown * unknownWeight * unknownWeight;
+    }
+
+    /**
+     * 一个 long 中所有为 1 的位对应标签的权重平方和
+     */
+    private double squaredWeightSum(long word, int wordIndex) {
+        double sum = 0;
+        while (word != 0) {
+            int tagId = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+            double weight = weightOf(tagId);
+            sum += weight * weight;
+            word &= word - 1;
+        }
+        return sum;
+    }
+
+    private double weightOf(int tagId) {
+        if (idf == null) {
+            return 1;
+        }
+        return tagId < idf.length ? idf[tagId] : unknownWeight;
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.arteon.utils;
+
+/**
+ * Jaccard 相似度：交集大小 / 并集大小，只看有没有相同标签，不看顺序
+ * <p>
+ * 返回的距离为 1 - Jaccard，基于位图按 long 做 popcount，计算量只和位图长度有关。
+ */
+public class JaccardSimilarity implements SimilarityStrategy {
+
+    public static final JaccardSimilarity INSTANCE = new JaccardSimilarity();
+
+    @Override
+    public double distance(TagVector candidate, TagVector query, double bound) {
+        int intersection = candidate.intersectionSize(query);
+        int union = candidate.getCardinality() + query.getCardinality() - intersection;
+        if (union == 0) {
+            return 1;
+        }
+        return 1 - (double) intersection / union;
+    }
+
+}
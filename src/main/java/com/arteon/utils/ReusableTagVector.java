@@ -0,0 +1,90 @@
+package com.arteon.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 可复用的标签向量：扫描列式存储时每一行都装进同一个对象，不再逐行分配
+ * <p>
+ * 标签编号数组和位图按长度各缓存一个，装入新的一行后上一行的内容就失效了，
+ * 所以只能在一个线程内使用，也不能把它保存下来（需要保存时用 {@link TagVector#of} 复制一份）。
+ */
+public final class ReusableTagVector extends TagVector {
+
+    private static final int[] EMPTY_TAG_IDS = new int[0];
+
+    /**
+     * tagIdsByLength[n] 为长度是 n 的标签编号数组
+     */
+    private int[][] tagIdsByLength = new int[16][];
+
+    /**
+     * bitsByLength[n] 为长度是 n 的位图
+     */
+    private long[][] bitsByLength = new long[4][];
+
+    public ReusableTagVector() {
+        super(EMPTY_TAG_IDS, EMPTY_BITS, 0);
+    }
+
+    /**
+     * 从缓冲区装入一行标签
+     *
+     * @param buffer   缓冲区
+     * @param position 第一个标签编号的字节位置（绝对位置，不改变缓冲区的 position）
+     * @param length   标签个数
+     * @return this
+     */
+    public ReusableTagVector load(ByteBuffer buffer, int position, int length) {
+        int[] tagIds = tagIdsOfLength(length);
+        int maxTagId = -1;
+        for (int i = 0; i < length; i++) {
+            int tagId = buffer.getInt(position + (i << 2));
+            tagIds[i] = tagId;
+            if (tagId > maxTagId) {
+                maxTagId = tagId;
+            }
+        }
+        long[] bits = maxTagId < 0 ? EMPTY_BITS : bitsOfLength((maxTagId >>> 6) + 1);
+        int unknown = 0;
+        for (int tagId : tagIds) {
+            if (tagId < 0) {
+                unknown++;
+            } else {
+                bits[tagId >>> 6] |= 1L << tagId;
+            }
+        }
+        reset(tagIds, bits, bitCount(bits) + unknown);
+        return this;
+    }
+
+    private int[] tagIdsOfLength(int length) {
+        if (length == 0) {
+            return EMPTY_TAG_IDS;
+        }
+        if (length >= tagIdsByLength.length) {
+            tagIdsByLength = Arrays.copyOf(tagIdsByLength, Math.max(length + 1, tagIdsByLength.length * 2));
+        }
+        int[] tagIds = tagIdsByLength[length];
+        if (tagIds == null) {
+            tagIds = new int[length];
+            tagIdsByLength[length] = tagIds;
+        }
+        return tagIds;
+    }
+
+    private long[] bitsOfLength(int length) {
+        if (length >= bitsByLength.length) {
+            bitsByLength = Arrays.copyOf(bitsByLength, Math.max(length + 1, bitsByLength.length * 2));
+        }
+        long[] bits = bitsByLength[length];
+        if (bits == null) {
+            bits = new long[length];
+            bitsByLength[length] = bits;
+        } else {
+            Arrays.fill(bits, 0);
+        }
+        return bits;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.arteon.utils;
+
+/**
+ * 标签相似度算法
+ * <p>
+ * 统一返回“距离”：值越小越相似，方便和 {@link TopKHeap} 配合使用。
+ */
+public interface SimilarityStrategy {
+
+    /**
+     * 计算两组标签的距离
+     *
+     * @param candidate 候选用户的标签
+     * @param query     查询的标签
+     * @param bound     淘汰线，结果超过它的候选会被丢弃，实现可以据此提前结束计算并返回任意比它大的值
+     * @return 距离，越小越相似
+     */
+    double distance(TagVector candidate, TagVector query, double bound);
+
+    /**
+     * 计算快照中下标为 candidateIndex 的候选的距离，实现可以使用按下标预先算好的候选数据，默认和 {@link #distance} 相同
+     *
+     * @param candidateIndex 候选在快照中的下标（必须是创建算法时用的那份快照）
+     */
+    default double distance(TagVector candidate, int candidateIndex, TagVector query, double bound) {
+        return distance(candidate, query, bound);
+    }
+
+    /**
+     * 为一次查询做准备：返回的实例可以缓存只和查询有关的结果，扫描时反复使用，默认返回自己
+     */
+    default SimilarityStrategy forQuery(TagVector query) {
+        return this;
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.arteon.utils;
+
+/**
+ * 编码后的一组标签，同时保存有序的标签编号和压缩位图，供不同的相似度算法使用
+ * <p>
+ * 负数编号表示字典里没有的标签，它们不进位图，但会计入标签总数。
+ */
+public class TagVector {
+
+    static final long[] EMPTY_BITS = new long[0];
+
+    /**
+     * 标签编号（保持原有顺序，编辑距离需要）
+     */
+    private int[] tagIds;
+
+    /**
+     * 标签位图，第 i 位为 1 表示有编号为 i 的标签，末尾全 0 的 long 不保存
+     */
+    private long[] bits;
+
+    /**
+     * 不重复的标签个数（包括字典里没有的标签）
+     */
+    private int cardinality;
+
+    TagVector(int[] tagIds, long[] bits, int cardinality) {
+        this.tagIds = tagIds;
+        this.bits = bits;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * 重新装入内容，只给 {@link ReusableTagVector} 使用，普通的 TagVector 创建后不可变
+     */
+    void reset(int[] tagIds, long[] bits, int cardinality) {
+        this.tagIds = tagIds;
+        this.bits = bits;
+        this.cardinality = cardinality;
+    }
+
+    public static TagVector of(int[] tagIds) {
+        int maxTagId = -1;
+        for (int tagId : tagIds) {
+            maxTagId = Math.max(maxTagId, tagId);
+        }
+        long[] bits = maxTagId < 0 ? EMPTY_BITS : new long[(maxTagId >>> 6) + 1];
+        int unknown = 0;
+        for (int tagId : tagIds) {
+            if (tagId < 0) {
+                unknown++;
+            } else {
+                bits[tagId >>> 6] |= 1L << tagId;
+            }
+        }
+        return new TagVector(tagIds, bits, bitCount(bits) + unknown);
+    }
+
+    public int[] getTagIds() {
+        return tagIds;
+    }
+
+    public long[] getBits() {
+        return bits;
+    }
+
+    public int getCardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return tagIds.length == 0;
+    }
+
+    /**
+     * 两组标签的交集大小
+     */
+    public int intersectionSize(TagVector other) {
+        long[] a = bits;
+        long[] b = other.bits;
+        int n = Math.min(a.length, b.length);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count;
+    }
+
+    static int bitCount(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+}
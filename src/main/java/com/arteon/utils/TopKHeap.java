@@ -0,0 +1,157 @@
+package com.arteon.utils;
+
+/**
+ * 有界 Top-K 堆（用于用户匹配排序）
+ * <p>
+ * 只保留分值最小（最相似）的 K 个候选，分值相同时 id 小的优先，保证排序结果稳定。
+ * 内部是以“最差候选”为堆顶的大顶堆，使用基本类型数组存储，入堆不会产生额外对象。
+ */
+public class TopKHeap {
+
+    /**
+     * 最多保留的候选数量
+     */
+    private final int capacity;
+
+    /**
+     * 候选分值（越小越相似）
+     */
+    private final double[] scores;
+
+    /**
+     * 候选用户 id
+     */
+    private final long[] ids;
+
+    /**
+     * 当前堆中的候选数量
+     */
+    private int size;
+
+    public TopKHeap(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.scores = new double[capacity];
+        this.ids = new long[capacity];
+    }
+
+    /**
+     * 尝试加入一个候选
+     *
+     * @param id    用户 id
+     * @param score 分值，越小越相似
+     * @return true-进入了前 K 名，false-被淘汰
+     */
+    public boolean offer(long id, double score) {
+        if (size < capacity) {
+            scores[size] = score;
+            ids[size] = id;
+            siftUp(size++);
+            return true;
+        }
+        // 堆满了，只有比堆顶（当前最差的候选）更好才替换
+        if (!worse(scores[0], ids[0], score, id)) {
+            return false;
+        }
+        scores[0] = score;
+        ids[0] = id;
+        siftDown(0, size);
+        return true;
+    }
+
+    /**
+     * 合并另一个堆的全部候选（并行计算时合并各分片的结果）
+     */
+    public void merge(TopKHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 当前的淘汰线：堆满后，分值比它大的候选一定进不了前 K 名
+     *
+     * @return 堆满时返回堆顶分值，否则返回正无穷
+     */
+    public double cutoff() {
+        return isFull() ? scores[0] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * 按分值从好到差返回候选 id（不会破坏当前堆）
+     */
+    public long[] sortedIds() {
+        double[] sortedScores = scores.clone();
+        long[] sortedIds = ids.clone();
+        // 在副本上做堆排序，大顶堆排完正好是升序
+        for (int end = size - 1; end > 0; end--) {
+            swap(sortedScores, sortedIds, 0, end);
+            siftDown(sortedScores, sortedIds, 0, end);
+        }
+        long[] result = new long[size];
+        System.arraycopy(sortedIds, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * a 是否比 b 更差（分值更大，或分值相同但 id 更大）
+     */
+    private static boolean worse(double scoreA, long idA, double scoreB, long idB) {
+        int c = Double.compare(scoreA, scoreB);
+        return c > 0 || (c == 0 && idA > idB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(scores[i], ids[i], scores[parent], ids[parent])) {
+                break;
+            }
+            swap(scores, ids, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        siftDown(scores, ids, i, n);
+    }
+
+    private static void siftDown(double[] scores, long[] ids, int i, int n) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= n) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < n && worse(scores[right], ids[right], scores[left], ids[left])) {
+                worst = right;
+            }
+            if (!worse(scores[worst], ids[worst], scores[i], ids[i])) {
+                return;
+            }
+            swap(scores, ids, i, worst);
+            i = worst;
+        }
+    }
+
+    private static void swap(double[] scores, long[] ids, int i, int j) {
+        double s = scores[i];
+        scores[i] = scores[j];
+        scores[j] = s;
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+}
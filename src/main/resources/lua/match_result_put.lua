@@ -0,0 +1,13 @@
+-- 写入一个匹配结果：计算开始后用户的结果被失效过（版本号变了）就放弃，算出来的可能是旧标签的结果
+-- KEYS[1] 用户的结果 Hash  KEYS[2] 用户结果的版本号
+-- ARGV[1] 计算前读到的版本号  ARGV[2] field  ARGV[3] 结果  ARGV[4] 过期时间（秒）
+-- 两个 key 不在同一个槽，需要单机 Redis
+if (redis.call('get', KEYS[2]) or '0') ~= ARGV[1] then
+    return 0
+end
+redis.call('hset', KEYS[1], ARGV[2], ARGV[3])
+-- 只在第一次写入时设置过期时间，后面写入不续期
+if redis.call('ttl', KEYS[1]) < 0 then
+    redis.call('expire', KEYS[1], ARGV[4])
+end
+return 1
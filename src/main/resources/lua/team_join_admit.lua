@@ -0,0 +1,29 @@
+-- 加入队伍准入：检查并占用队伍名额和用户的队伍数量，整个脚本原子执行
+-- 队伍和用户的 key 不在同一个槽，需要单机 Redis，不支持 Redis Cluster
+-- KEYS[1] 队伍人数  KEYS[2] 队伍成员集合  KEYS[3] 用户加入的队伍数
+-- ARGV[1] 用户 id  ARGV[2] 队伍最大人数  ARGV[3] 用户最多加入的队伍数  ARGV[4] 过期时间（秒）
+-- 返回 0-准入 1-重复加入 2-队伍已满 3-用户加入的队伍太多 -1-队伍未加载 -2-用户未加载
+local teamCount = redis.call('get', KEYS[1])
+if not teamCount then
+    return -1
+end
+local userCount = redis.call('get', KEYS[3])
+if not userCount then
+    return -2
+end
+if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then
+    return 1
+end
+if tonumber(teamCount) >= tonumber(ARGV[2]) then
+    return 2
+end
+if tonumber(userCount) >= tonumber(ARGV[3]) then
+    return 3
+end
+redis.call('incr', KEYS[1])
+redis.call('sadd', KEYS[2], ARGV[1])
+redis.call('incr', KEYS[3])
+for i = 1, 3 do
+    redis.call('expire', KEYS[i], ARGV[4])
+end
+return 0
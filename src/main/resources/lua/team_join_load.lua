@@ -0,0 +1,15 @@
+-- 从数据库加载队伍的人数和成员，已经加载过就不覆盖（可能已经有新的准入）
+-- KEYS[1] 队伍人数  KEYS[2] 队伍成员集合
+-- ARGV[1] 过期时间（秒）  ARGV[2..] 成员的用户 id
+if redis.call('exists', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('del', KEYS[2])
+for i = 2, #ARGV do
+    redis.call('sadd', KEYS[2], ARGV[i])
+end
+redis.call('set', KEYS[1], #ARGV - 1, 'EX', ARGV[1])
+if #ARGV > 1 then
+    redis.call('expire', KEYS[2], ARGV[1])
+end
+return 1
@@ -0,0 +1,11 @@
+-- 归还加入队伍时占用的名额（写数据库失败的补偿、退出队伍）
+-- KEYS[1] 队伍人数  KEYS[2] 队伍成员集合  KEYS[3] 用户加入的队伍数
+-- ARGV[1] 用户 id
+-- 只修改已经加载的计数，不会减成负数
+if redis.call('srem', KEYS[2], ARGV[1]) == 1 and tonumber(redis.call('get', KEYS[1]) or '0') > 0 then
+    redis.call('decr', KEYS[1])
+end
+if tonumber(redis.call('get', KEYS[3]) or '0') > 0 then
+    redis.call('decr', KEYS[3])
+end
+return 0
@@ -0,0 +1,7 @@
+-- 成员关系修改后删除集合并增加版本号，正在从数据库加载的旧数据不会再写进来
+-- KEYS[1] 集合  KEYS[2] 集合的版本号
+-- ARGV[1] 版本号的过期时间（秒），要比一次加载的耗时长得多
+redis.call('del', KEYS[1])
+redis.call('incr', KEYS[2])
+redis.call('expire', KEYS[2], ARGV[1])
+return 0
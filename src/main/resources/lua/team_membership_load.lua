@@ -0,0 +1,15 @@
+-- 把从数据库查到的成员关系写入集合
+-- 已经有集合就不覆盖；查数据库期间集合被失效过（版本号变了）也不写入，查到的可能是修改之前的数据
+-- KEYS[1] 集合  KEYS[2] 集合的版本号
+-- ARGV[1] 过期时间（秒）  ARGV[2] 查数据库之前读到的版本号  ARGV[3..] 集合元素（包含占位元素 0，空集合也能缓存）
+if redis.call('exists', KEYS[1]) == 1 then
+    return 0
+end
+if (redis.call('get', KEYS[2]) or '0') ~= ARGV[2] then
+    return 0
+end
+for i = 3, #ARGV do
+    redis.call('sadd', KEYS[1], ARGV[i])
+end
+redis.call('expire', KEYS[1], ARGV[1])
+return 1
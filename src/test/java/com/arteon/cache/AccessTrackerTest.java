@@ -0,0 +1,70 @@
+package com.arteon.cache;
+
+import com.arteon.commons.MatchStrategyEnum;
+import com.arteon.config.CacheConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 热度统计测试
+ */
+public class AccessTrackerTest {
+
+    @Test
+    public void parsesRecommendAndMatchQueries() {
+        AccessTracker.HotQuery recommend = AccessTracker.HotQuery.parse("recommend:7:2:20");
+        Assertions.assertTrue(recommend.isRecommend());
+        Assertions.assertEquals(7, recommend.getUserId());
+        Assertions.assertEquals(2, recommend.getPageNum());
+        Assertions.assertEquals(20, recommend.getSize());
+        AccessTracker.HotQuery match = AccessTracker.HotQuery.parse("match:7:10:JACCARD");
+        Assertions.assertFalse(match.isRecommend());
+        Assertions.assertEquals(10, match.getSize());
+        Assertions.assertEquals(MatchStrategyEnum.JACCARD, match.getStrategyEnum());
+    }
+
+    @Test
+    public void ignoresMalformedQueries() {
+        Assertions.assertNull(AccessTracker.HotQuery.parse("recommend:7:2"));
+        Assertions.assertNull(AccessTracker.HotQuery.parse("recommend:x:2:20"));
+        Assertions.assertNull(AccessTracker.HotQuery.parse("match:7:10:NOPE"));
+        Assertions.assertNull(AccessTracker.HotQuery.parse("other:7:10:20"));
+    }
+
+    @Test
+    public void drainDoesNotLoseConcurrentRecords() throws InterruptedException {
+        AccessTracker tracker = new AccessTracker();
+        ReflectionTestUtils.setField(tracker, "cacheConfig", new CacheConfig());
+        int threads = 4;
+        int perThread = 100000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    tracker.recordMatch(7, 10, MatchStrategyEnum.JACCARD);
+                }
+                done.countDown();
+            }).start();
+        }
+        // 边记录边上报，上报期间的访问都要计入下一轮
+        long total = 0;
+        while (done.getCount() > 0) {
+            total += drainTotal(tracker);
+        }
+        total += drainTotal(tracker);
+        Assertions.assertEquals((long) threads * perThread, total);
+    }
+
+    private static long drainTotal(AccessTracker tracker) {
+        List<String> members = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        tracker.drain(members, counts);
+        return counts.stream().mapToLong(Long::longValue).sum();
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.arteon.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 缓存值提前刷新测试
+ */
+public class CacheEntryTest {
+
+    @Test
+    public void refreshesOnlyNearExpiry() {
+        CacheEntry<String> entry = new CacheEntry<>("v", 10_000, 100);
+        // 离过期还很远，抽到再小的随机数也不刷新
+        Assertions.assertFalse(entry.shouldRefresh(0, 1.0, 1e-9));
+        // 离过期 100ms，加载要 100ms：随机数小于 1/e 时刷新
+        Assertions.assertTrue(entry.shouldRefresh(9_900, 1.0, 0.3));
+        Assertions.assertFalse(entry.shouldRefresh(9_900, 1.0, 0.5));
+        // 已经过期一定刷新
+        Assertions.assertTrue(entry.shouldRefresh(10_000, 1.0, 1.0));
+    }
+
+    @Test
+    public void zeroBetaDisablesEarlyRefresh() {
+        CacheEntry<String> entry = new CacheEntry<>("v", 10_000, 100);
+        Assertions.assertFalse(entry.shouldRefresh(9_999, 0, 1e-9));
+    }
+
+}
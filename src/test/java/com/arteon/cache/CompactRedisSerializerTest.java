@@ -0,0 +1,121 @@
+package com.arteon.cache;
+
+import com.arteon.config.CacheConfig;
+import com.arteon.domain.User;
+import com.arteon.domain.vo.CursorPageVO;
+import com.arteon.domain.vo.TeamVO;
+import com.arteon.domain.vo.UserVO;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 紧凑二进制值序列化测试
+ */
+public class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer(new CacheConfig.Serializer());
+
+    @Test
+    public void roundTripsCachedPageOfUsers() {
+        Page<User> page = new Page<>(2, 20, 123, true);
+        List<User> users = new ArrayList<>();
+        for (long i = 1; i <= 20; i++) {
+            users.add(user(i));
+        }
+        page.setRecords(users);
+        CacheEntry<Page<User>> entry = new CacheEntry<>(page, 1_700_000_000_000L, 35);
+        byte[] bytes = serializer.serialize(entry);
+        // 比 JDK 序列化小得多
+        Assertions.assertTrue(bytes.length * 2 < new JdkSerializationRedisSerializer().serialize(entry).length);
+        @SuppressWarnings("unchecked")
+        CacheEntry<Page<User>> read = (CacheEntry<Page<User>>) serializer.deserialize(bytes);
+        Assertions.assertEquals(entry.getExpireAt(), read.getExpireAt());
+        Assertions.assertEquals(entry.getLoadMillis(), read.getLoadMillis());
+        Assertions.assertEquals(2, read.getValue().getCurrent());
+        Assertions.assertEquals(20, read.getValue().getSize());
+        Assertions.assertEquals(123, read.getValue().getTotal());
+        Assertions.assertEquals(users, read.getValue().getRecords());
+    }
+
+    @Test
+    public void roundTripsTeamVOAndIds() {
+        TeamVO teamVO = new TeamVO();
+        teamVO.setId(7L);
+        teamVO.setName("队伍");
+        teamVO.setMaxNum(5);
+        teamVO.setExpireTime(new Date(1_800_000_000_000L));
+        teamVO.setHasJoin(true);
+        UserVO createUser = new UserVO();
+        createUser.setId(3);
+        createUser.setUsername("创建人");
+        teamVO.setCreateUser(createUser);
+        Assertions.assertEquals(teamVO, serializer.deserialize(serializer.serialize(teamVO)));
+        long[] userIds = {42, 7, 1000, -1};
+        Assertions.assertArrayEquals(userIds, (long[]) serializer.deserialize(serializer.serialize(userIds)));
+    }
+
+    @Test
+    public void roundTripsCursorPage() {
+        CursorPageVO<User> cursorPageVO = new CursorPageVO<>();
+        List<User> users = new ArrayList<>();
+        users.add(user(5));
+        cursorPageVO.setRecords(users);
+        cursorPageVO.setHasMore(true);
+        cursorPageVO.setNextCursor("aWQ6NQ");
+        Assertions.assertEquals(cursorPageVO, serializer.deserialize(serializer.serialize(cursorPageVO)));
+    }
+
+    @Test
+    public void compressesLargeValues() {
+        StringBuilder tags = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            tags.append("[\"java\",\"python\"]");
+        }
+        User user = user(1);
+        user.setTags(tags.toString());
+        byte[] bytes = serializer.serialize(user);
+        Assertions.assertTrue(bytes.length < tags.length() / 4);
+        Assertions.assertEquals(user, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void readsLegacyJdkValuesAndFallsBackForOtherTypes() {
+        User user = user(9);
+        byte[] legacy = new JdkSerializationRedisSerializer().serialize(user);
+        Assertions.assertEquals(user, serializer.deserialize(legacy));
+        // 没有专门编码的类型嵌一段 JDK 序列化
+        java.util.HashMap<String, Integer> map = new java.util.HashMap<>();
+        map.put("a", 1);
+        Assertions.assertEquals(map, serializer.deserialize(serializer.serialize(map)));
+        Assertions.assertNull(serializer.deserialize(new byte[0]));
+    }
+
+    @Test
+    public void writesJdkFormatWhenCompactIsDisabled() {
+        CacheConfig.Serializer config = new CacheConfig.Serializer();
+        config.setCompactEnabled(false);
+        byte[] bytes = new CompactRedisSerializer(config).serialize(user(1));
+        Assertions.assertEquals((byte) 0xAC, bytes[0]);
+        Assertions.assertEquals(user(1), serializer.deserialize(bytes));
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        user.setUserAccount("account" + id);
+        user.setGender(1);
+        user.setUserStatus(0);
+        user.setCreateTime(new Date(1_600_000_000_000L + id));
+        user.setUserRole(0);
+        user.setTags("[\"java\"]");
+        return user;
+    }
+
+}
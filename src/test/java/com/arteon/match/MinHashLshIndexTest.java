@@ -0,0 +1,32 @@
+package com.arteon.match;
+
+import com.arteon.utils.TagVector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+/**
+ * MinHash/LSH 索引测试
+ */
+public class MinHashLshIndexTest {
+
+    @Test
+    public void identicalTagSetsShareABucket() {
+        long[] userIds = {1, 2, 3, 4};
+        TagVector[] userTags = {
+                TagVector.of(new int[]{0, 1, 2}),
+                TagVector.of(new int[]{2, 1, 0}),
+                TagVector.of(new int[]{7, 8, 9}),
+                TagVector.of(new int[0])
+        };
+        UserTagSnapshot snapshot = new UserTagSnapshot(userIds, userTags, 10);
+        MinHashLshIndex lshIndex = new MinHashLshIndex(snapshot, 8, 2);
+        BitSet candidates = lshIndex.candidates(TagVector.of(new int[]{0, 1, 2}));
+        Assertions.assertTrue(candidates.get(0));
+        Assertions.assertTrue(candidates.get(1));
+        Assertions.assertFalse(candidates.get(3));
+        Assertions.assertTrue(lshIndex.candidates(TagVector.of(new int[]{-1})).isEmpty());
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.arteon.match;
+
+import com.arteon.utils.TagVector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 标签倒排索引测试
+ */
+public class TagInvertedIndexTest {
+
+    @Test
+    public void searchIntersectsAllTags() {
+        long[] userIds = new long[200];
+        TagVector[] userTags = new TagVector[200];
+        for (int i = 0; i < 200; i++) {
+            userIds[i] = i + 1;
+            // 标签 0：偶数 id；标签 1：3 的倍数；标签 2：只有 id 为 60 的用户
+            int[] tags = new int[3];
+            int n = 0;
+            if ((i + 1) % 2 == 0) {
+                tags[n++] = 0;
+            }
+            if ((i + 1) % 3 == 0) {
+                tags[n++] = 1;
+            }
+            if (i + 1 == 60) {
+                tags[n++] = 2;
+            }
+            userTags[i] = TagVector.of(java.util.Arrays.copyOf(tags, n));
+        }
+        TagInvertedIndex index = new TagInvertedIndex(new UserTagSnapshot(userIds, userTags, 3), 3);
+        long[] both = index.search(new int[]{0, 1});
+        Assertions.assertEquals(33, both.length);
+        for (long id : both) {
+            Assertions.assertEquals(0, id % 6);
+        }
+        Assertions.assertArrayEquals(new long[]{60}, index.search(new int[]{1, 2, 0}));
+        Assertions.assertEquals(0, index.search(new int[]{0, -1}).length);
+    }
+
+    @Test
+    public void applyUpdatesOnlyChangedPostings() {
+        long[] userIds = {1, 2, 3};
+        TagVector[] userTags = {
+                TagVector.of(new int[]{0}),
+                TagVector.of(new int[]{0, 1}),
+                TagVector.of(new int[]{1})
+        };
+        TagInvertedIndex index = new TagInvertedIndex(new UserTagSnapshot(userIds, userTags, 2), 2);
+        // 用户 2 去掉标签 0、加上新标签 2，用户 3 被删除，新用户 4 有标签 0
+        TagInvertedIndex updated = index.apply(new long[]{2, 3, 4},
+                new TagVector[]{userTags[1], userTags[2], null},
+                new TagVector[]{TagVector.of(new int[]{1, 2}), null, TagVector.of(new int[]{0})}, 3);
+        Assertions.assertArrayEquals(new long[]{1, 2}, index.search(new int[]{0}));
+        Assertions.assertArrayEquals(new long[]{1, 4}, updated.search(new int[]{0}));
+        Assertions.assertArrayEquals(new long[]{2}, updated.search(new int[]{1}));
+        Assertions.assertArrayEquals(new long[]{2}, updated.search(new int[]{2, 1}));
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.arteon.match;
+
+import com.arteon.config.MatchConfig;
+import com.arteon.domain.User;
+import com.arteon.event.UserTagChangeEvent;
+import com.arteon.mapper.UserMapper;
+import com.arteon.utils.TagVector;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 用户标签索引多节点同步测试：两个索引实例共用一个模拟的数据库和 Redis 频道
+ */
+public class UserTagIndexTest {
+
+    /**
+     * 模拟的 user 表，按 id 排序
+     */
+    private final Map<Long, User> users = new TreeMap<>();
+
+    private final List<MessageListener<String>> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<UserTagIndex> nodes = new ArrayList<>();
+
+    private UserMapper userMapper;
+
+    private RedissonClient redissonClient;
+
+    @BeforeEach
+    public void setUp() {
+        saveUser(1L, "[\"java\"]");
+        saveUser(2L, "[\"go\"]");
+        userMapper = Mockito.mock(UserMapper.class);
+        Mockito.when(userMapper.selectNow()).thenAnswer(invocation -> new Date());
+        Mockito.doAnswer(invocation -> {
+            scan(null, invocation.getArgument(0));
+            return null;
+        }).when(userMapper).scanUserTags(ArgumentMatchers.any());
+        Mockito.doAnswer(invocation -> {
+            scan(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(userMapper).scanUserTagsUpdatedSince(ArgumentMatchers.any(), ArgumentMatchers.any());
+        RTopic topic = Mockito.mock(RTopic.class);
+        Mockito.when(topic.addListener(ArgumentMatchers.eq(String.class), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> {
+                    listeners.add(invocation.getArgument(1));
+                    return listeners.size();
+                });
+        Mockito.when(topic.publish(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            for (MessageListener<String> listener : listeners) {
+                listener.onMessage("pm:match:user-tag-change", invocation.getArgument(0));
+            }
+            return (long) listeners.size();
+        });
+        redissonClient = Mockito.mock(RedissonClient.class);
+        Mockito.when(redissonClient.getTopic(ArgumentMatchers.anyString(), ArgumentMatchers.any(Codec.class)))
+                .thenReturn(topic);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        nodes.forEach(UserTagIndex::shutdown);
+    }
+
+    @Test
+    public void changeOnOneNodeReachesOtherNodes() throws InterruptedException {
+        // 定时补齐间隔很长，只能靠广播同步
+        UserTagIndex a = startNode(3600);
+        UserTagIndex b = startNode(3600);
+        Assertions.assertEquals("java", tagsOf(b, 1L));
+        saveUser(1L, "[\"python\"]");
+        a.onUserTagChange(new UserTagChangeEvent(this, 1L, "[\"python\"]"));
+        a.onUserTagChange(UserTagChangeEvent.deleted(this, 2L));
+        awaitTrue(() -> "python".equals(tagsOf(b, 1L)) && b.getSnapshot().tagsOf(2L) == null);
+        awaitTrue(() -> "python".equals(tagsOf(a, 1L)));
+        Assertions.assertArrayEquals(new long[]{1L},
+                b.getInvertedIndex().search(b.encodeForQuery(Collections.singletonList("python"))));
+        // 余弦相似度用的模长在发布快照之前就算好了
+        Assertions.assertEquals(b.getSnapshot().size(), b.getSnapshot().getIdfSquaredNorms().length);
+    }
+
+    @Test
+    public void missedBroadcastIsCaughtUpFromDatabase() throws InterruptedException {
+        UserTagIndex b = startNode(1);
+        // 另一个节点写了数据库，但广播丢了
+        saveUser(2L, "[\"rust\"]");
+        saveUser(3L, "[\"c++\"]");
+        awaitTrue(() -> "rust".equals(tagsOf(b, 2L)) && "c++".equals(tagsOf(b, 3L)));
+    }
+
+    private UserTagIndex startNode(long catchUpIntervalSeconds) {
+        MatchConfig matchConfig = new MatchConfig();
+        matchConfig.getSync().setCatchUpIntervalSeconds(catchUpIntervalSeconds);
+        UserTagIndex index = new UserTagIndex();
+        ReflectionTestUtils.setField(index, "userMapper", userMapper);
+        ReflectionTestUtils.setField(index, "matchConfig", matchConfig);
+        ReflectionTestUtils.setField(index, "redissonClient", redissonClient);
+        index.build();
+        nodes.add(index);
+        Assertions.assertTrue(index.isReady());
+        return index;
+    }
+
+    private synchronized void saveUser(long id, String tags) {
+        User user = new User();
+        user.setId(id);
+        user.setTags(tags);
+        user.setIsDelete(0);
+        user.setUpdateTime(new Date());
+        users.put(id, user);
+    }
+
+    private synchronized void scan(Date updatedSince, ResultHandler<User> handler) {
+        DefaultResultContext<User> context = new DefaultResultContext<>();
+        for (User user : users.values()) {
+            if (updatedSince == null || !user.getUpdateTime().before(updatedSince)) {
+                context.nextResultObject(user);
+                handler.handleResult(context);
+            }
+        }
+    }
+
+    /**
+     * 用户在这个节点的索引中的第一个标签名，不在索引中返回 null
+     */
+    private static String tagsOf(UserTagIndex index, long userId) {
+        TagVector tags = index.getSnapshot().tagsOf(userId);
+        if (tags == null || tags.isEmpty()) {
+            return null;
+        }
+        return index.getTagDictionary().nameOf(tags.getTagIds()[0]);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+
+}
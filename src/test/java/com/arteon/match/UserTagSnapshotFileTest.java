@@ -0,0 +1,48 @@
+package com.arteon.match;
+
+import com.arteon.utils.TagVector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * 用户标签快照文件测试
+ */
+public class UserTagSnapshotFileTest {
+
+    @Test
+    public void writeThenMapBack(@TempDir Path dir) throws Exception {
+        int n = UserTagSnapshot.SEGMENT_SIZE + 10;
+        long[] userIds = new long[n];
+        TagVector[] userTags = new TagVector[n];
+        for (int i = 0; i < n; i++) {
+            userIds[i] = i * 3L + 1;
+            // 标签数各不相同，让段数据的长度不是 8 的倍数
+            userTags[i] = TagVector.of(i % 3 == 0 ? new int[]{i % 5} : new int[]{1, 2});
+        }
+        UserTagSnapshot snapshot = new UserTagSnapshot(userIds, userTags, 5);
+        Path path = dir.resolve("index.snapshot");
+        UserTagSnapshotFile.write(path, snapshot, Arrays.asList("Java", "Python", "男", "大一", "C++"), 123456L);
+
+        UserTagSnapshotFile.Loaded loaded = UserTagSnapshotFile.read(path);
+        Assertions.assertNotNull(loaded);
+        Assertions.assertEquals(123456L, loaded.getWatermark());
+        Assertions.assertEquals(Arrays.asList("Java", "Python", "男", "大一", "C++"), loaded.getTagNames());
+        UserTagSnapshot restored = loaded.getSnapshot();
+        Assertions.assertEquals(n, restored.size());
+        Assertions.assertEquals(2, restored.segmentCount());
+        for (int i = 0; i < n; i++) {
+            Assertions.assertEquals(userIds[i], restored.userIdAt(i));
+            Assertions.assertArrayEquals(userTags[i].getTagIds(), restored.tagsAt(i).getTagIds());
+        }
+        Assertions.assertArrayEquals(snapshot.getIdf(), restored.getIdf());
+        // 映射出来的段也可以继续写时复制
+        UserTagSnapshot updated = restored.apply(new long[]{1}, new TagVector[]{null}, 5);
+        Assertions.assertNull(updated.tagsOf(1));
+        Assertions.assertNotNull(restored.tagsOf(1));
+    }
+
+}
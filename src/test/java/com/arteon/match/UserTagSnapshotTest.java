@@ -0,0 +1,107 @@
+package com.arteon.match;
+
+import com.arteon.utils.ReusableTagVector;
+import com.arteon.utils.TagVector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 用户标签快照写时复制测试
+ */
+public class UserTagSnapshotTest {
+
+    @Test
+    public void applyUpsertsAndRemovesWithoutTouchingOldSnapshot() {
+        int n = UserTagSnapshot.SEGMENT_SIZE * 3;
+        long[] userIds = new long[n];
+        TagVector[] userTags = new TagVector[n];
+        for (int i = 0; i < n; i++) {
+            // id 都是偶数，留出插入的空隙
+            userIds[i] = 2L * (i + 1);
+            userTags[i] = TagVector.of(new int[]{i % 2});
+        }
+        UserTagSnapshot snapshot = new UserTagSnapshot(userIds, userTags, 2);
+        TagVector newTags = TagVector.of(new int[]{2});
+        // 修改第一段的一个用户，在第二段中间插入一个用户，删除最后一个用户，在末尾追加一个用户
+        long last = userIds[n - 1];
+        UserTagSnapshot updated = snapshot.apply(new long[]{2, 8193, last, last + 1},
+                new TagVector[]{newTags, newTags, null, newTags}, 3);
+
+        Assertions.assertEquals(n, snapshot.size());
+        Assertions.assertNull(snapshot.tagsOf(8193));
+        Assertions.assertNotNull(snapshot.tagsOf(last));
+
+        Assertions.assertEquals(n + 1, updated.size());
+        Assertions.assertArrayEquals(newTags.getTagIds(), updated.tagsOf(2).getTagIds());
+        Assertions.assertArrayEquals(newTags.getTagIds(), updated.tagsOf(8193).getTagIds());
+        Assertions.assertArrayEquals(newTags.getTagIds(), updated.tagsOf(last + 1).getTagIds());
+        Assertions.assertNull(updated.tagsOf(last));
+        for (int i = 1; i < updated.size(); i++) {
+            Assertions.assertTrue(updated.userIdAt(i - 1) < updated.userIdAt(i));
+        }
+        // 新标签只有 3 个人用，IDF 比老标签大
+        Assertions.assertTrue(updated.getIdf()[2] > updated.getIdf()[0]);
+    }
+
+    @Test
+    public void applySplitsOversizedSegments() {
+        UserTagSnapshot snapshot = new UserTagSnapshot(new long[0], new TagVector[0], 1);
+        int n = UserTagSnapshot.MAX_SEGMENT_SIZE * 2 + 1;
+        long[] userIds = new long[n];
+        TagVector[] userTags = new TagVector[n];
+        for (int i = 0; i < n; i++) {
+            userIds[i] = i + 1;
+            userTags[i] = TagVector.of(new int[]{0});
+        }
+        UserTagSnapshot updated = snapshot.apply(userIds, userTags, 1);
+        Assertions.assertEquals(n, updated.size());
+        for (int s = 0; s < updated.segmentCount(); s++) {
+            Assertions.assertTrue(updated.segment(s).size() <= UserTagSnapshot.MAX_SEGMENT_SIZE);
+        }
+        Assertions.assertEquals(n, updated.userIdAt(n - 1));
+        // 删光之后没有空段
+        TagVector[] removed = new TagVector[n];
+        Assertions.assertEquals(0, updated.apply(userIds, removed, 1).segmentCount());
+    }
+
+    @Test
+    public void builderStoresTagsOffHeap() {
+        UserTagSnapshot.Builder builder = new UserTagSnapshot.Builder();
+        builder.add(1, new int[]{3, 1, 3});
+        builder.add(5, new int[0]);
+        builder.add(9, new int[]{70});
+        UserTagSnapshot snapshot = builder.build(71);
+        Assertions.assertEquals(3, snapshot.size());
+        Assertions.assertTrue(snapshot.offHeapBytes() > 0);
+        ReusableTagVector tags = new ReusableTagVector();
+        // 重复的标签只算一次
+        Assertions.assertArrayEquals(new int[]{3, 1, 3}, snapshot.loadTags(0, tags).getTagIds());
+        Assertions.assertEquals(2, tags.getCardinality());
+        Assertions.assertTrue(snapshot.loadTags(1, tags).isEmpty());
+        // 复用同一个对象装入下一行，位图不能残留上一行的内容
+        Assertions.assertEquals(1, snapshot.loadTags(2, tags).getCardinality());
+        Assertions.assertEquals(0, tags.intersectionSize(TagVector.of(new int[]{1, 3})));
+        Assertions.assertEquals(-1, snapshot.indexOf(4));
+        Assertions.assertEquals(2, snapshot.indexOf(9));
+    }
+
+    @Test
+    public void ceilingIndexFindsNextUserAcrossSegments() {
+        int n = UserTagSnapshot.SEGMENT_SIZE + 10;
+        long[] userIds = new long[n];
+        TagVector[] userTags = new TagVector[n];
+        for (int i = 0; i < n; i++) {
+            userIds[i] = 2L * (i + 1);
+            userTags[i] = TagVector.of(new int[]{0});
+        }
+        UserTagSnapshot snapshot = new UserTagSnapshot(userIds, userTags, 1);
+        Assertions.assertEquals(0, snapshot.ceilingIndex(Long.MIN_VALUE));
+        Assertions.assertEquals(0, snapshot.ceilingIndex(2));
+        Assertions.assertEquals(1, snapshot.ceilingIndex(3));
+        // 第一段最后一个用户之后落到第二段的开头
+        long lastOfFirst = userIds[UserTagSnapshot.SEGMENT_SIZE - 1];
+        Assertions.assertEquals(UserTagSnapshot.SEGMENT_SIZE, snapshot.ceilingIndex(lastOfFirst + 1));
+        Assertions.assertEquals(n, snapshot.ceilingIndex(userIds[n - 1] + 1));
+    }
+
+}
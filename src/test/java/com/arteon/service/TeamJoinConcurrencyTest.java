@@ -0,0 +1,354 @@
+package com.arteon.service;
+
+import com.arteon.cache.TeamMembershipCache;
+import com.arteon.config.TeamConfig;
+import com.arteon.constant.TeamConstant;
+import com.arteon.domain.Team;
+import com.arteon.domain.User;
+import com.arteon.domain.UserTeam;
+import com.arteon.domain.request.TeamJoinRequest;
+import com.arteon.exception.BusinessException;
+import com.arteon.mapper.TeamMapper;
+import com.arteon.mapper.UserMapper;
+import com.arteon.mapper.UserTeamMapper;
+import com.arteon.service.impl.TeamAdmissionServiceImpl;
+import com.arteon.service.impl.TeamServiceImpl;
+import com.arteon.service.impl.UserTeamServiceImpl;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mybatis.spring.annotation.MapperScan;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.support.TransactionTemplate;
+import redis.embedded.RedisServer;
+
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并发加入队伍测试：队伍人数、重复加入、加入队伍数量的限制在并发下也不会被突破
+ * <p>
+ * 用 H2（MySQL 兼容模式）和内嵌 Redis 代替 MySQL 和 Redis，加锁加入和 Redis 准入加入两种方式都测。
+ */
+@SpringJUnitConfig(TeamJoinConcurrencyTest.Config.class)
+public class TeamJoinConcurrencyTest {
+
+    private static final int THREADS = 20;
+
+    @Resource
+    private TeamService teamService;
+
+    @Resource
+    private TeamMapper teamMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private UserTeamMapper userTeamMapper;
+
+    @Resource
+    private TeamConfig teamConfig;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private TeamMembershipCache teamMembershipCache;
+
+    @AfterEach
+    public void tearDown() {
+        userTeamMapper.delete(null);
+        teamMapper.delete(null);
+        userMapper.delete(null);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void concurrentJoinsNeverOverfillTeam(boolean fastJoin) throws Exception {
+        teamConfig.setFastJoinEnabled(fastJoin);
+        // 队长已经在队伍里，还剩 4 个名额
+        User captain = this.newUser();
+        Team team = this.newTeam(captain, 5);
+        List<Callable<Boolean>> joins = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            User user = this.newUser();
+            joins.add(() -> teamService.joinTeam(joinRequest(team), user));
+        }
+        List<String> errors = new ArrayList<>();
+        Assertions.assertEquals(4, runConcurrently(joins, errors));
+        Assertions.assertEquals(THREADS - 4, errors.size());
+        errors.forEach(error -> Assertions.assertEquals("队伍已满", error));
+        Assertions.assertEquals(5, teamMapper.selectById(team.getId()).getMemberCount());
+        Assertions.assertEquals(5, this.countMembers(team));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void concurrentDuplicateJoinsSaveOnce(boolean fastJoin) throws Exception {
+        teamConfig.setFastJoinEnabled(fastJoin);
+        Team team = this.newTeam(this.newUser(), 10);
+        User user = this.newUser();
+        List<Callable<Boolean>> joins = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            joins.add(() -> teamService.joinTeam(joinRequest(team), user));
+        }
+        List<String> errors = new ArrayList<>();
+        Assertions.assertEquals(1, runConcurrently(joins, errors));
+        errors.forEach(error -> Assertions.assertEquals("不能重复加入队伍", error));
+        Assertions.assertEquals(2, teamMapper.selectById(team.getId()).getMemberCount());
+        Assertions.assertEquals(2, this.countMembers(team));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void concurrentJoinsRespectUserTeamLimit(boolean fastJoin) throws Exception {
+        teamConfig.setFastJoinEnabled(fastJoin);
+        // 用户已经在 3 个队伍里，同时加入 10 个队伍只能再成功 2 个
+        User user = this.newUser();
+        for (int i = 0; i < 3; i++) {
+            this.addMember(this.newTeam(this.newUser(), 10), user);
+        }
+        List<Callable<Boolean>> joins = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Team team = this.newTeam(this.newUser(), 10);
+            joins.add(() -> teamService.joinTeam(joinRequest(team), user));
+        }
+        List<String> errors = new ArrayList<>();
+        Assertions.assertEquals(TeamConstant.MAX_JOIN_TEAM_NUM - 3, runConcurrently(joins, errors));
+        errors.forEach(error -> Assertions.assertEquals("一个用户最多加入或创建5个队伍", error));
+        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("userId", user.getId());
+        Assertions.assertEquals(TeamConstant.MAX_JOIN_TEAM_NUM, userTeamMapper.selectCount(queryWrapper));
+    }
+
+    @Test
+    public void databaseRejectsWhenAdmissionCountIsStale() {
+        teamConfig.setFastJoinEnabled(true);
+        Team team = this.newTeam(this.newUser(), 2);
+        Assertions.assertTrue(teamService.joinTeam(joinRequest(team), this.newUser()));
+        // Redis 里的人数偏小（比如重新加载时和加入交错），准入能通过，但数据库的条件更新不会超员
+        String countKey = String.format(TeamConstant.ADMISSION_TEAM_COUNT_KEY_FORMAT, team.getId());
+        stringRedisTemplate.opsForValue().set(countKey, "0");
+        BusinessException e = Assertions.assertThrows(BusinessException.class,
+                () -> teamService.joinTeam(joinRequest(team), this.newUser()));
+        Assertions.assertEquals("队伍已满", e.getDescription());
+        Assertions.assertEquals(2, teamMapper.selectById(team.getId()).getMemberCount());
+        // 没写进数据库的名额已经归还
+        Assertions.assertEquals("0", stringRedisTemplate.opsForValue().get(countKey));
+    }
+
+    @Test
+    public void incrementMemberCountStopsAtMaxNum() {
+        Team team = this.newTeam(this.newUser(), 2);
+        Assertions.assertEquals(1, teamMapper.incrementMemberCount(team.getId()));
+        Assertions.assertEquals(0, teamMapper.incrementMemberCount(team.getId()));
+        Assertions.assertEquals(2, teamMapper.selectById(team.getId()).getMemberCount());
+    }
+
+    /**
+     * 同时执行所有任务
+     *
+     * @param errors 收集业务异常的描述
+     * @return 返回 true 的任务数
+     */
+    private static int runConcurrently(List<Callable<Boolean>> tasks, List<String> errors) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (Callable<Boolean> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            int succeeded = 0;
+            for (Future<Boolean> future : futures) {
+                try {
+                    if (future.get(30, TimeUnit.SECONDS)) {
+                        succeeded++;
+                    }
+                } catch (ExecutionException e) {
+                    Assertions.assertInstanceOf(BusinessException.class, e.getCause());
+                    errors.add(((BusinessException) e.getCause()).getDescription());
+                }
+            }
+            return succeeded;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private User newUser() {
+        User user = new User();
+        user.setUsername("user");
+        userMapper.insert(user);
+        return user;
+    }
+
+    /**
+     * 创建队伍，创建者是第一个成员
+     */
+    private Team newTeam(User captain, int maxNum) {
+        Team team = new Team();
+        team.setName("team");
+        team.setMaxNum(maxNum);
+        team.setMemberCount(0);
+        team.setUserId(captain.getId());
+        team.setStatus(0);
+        team.setExpireTime(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+        teamMapper.insert(team);
+        this.addMember(team, captain);
+        return team;
+    }
+
+    private void addMember(Team team, User user) {
+        Assertions.assertEquals(1, teamMapper.incrementMemberCount(team.getId()));
+        UserTeam userTeam = new UserTeam();
+        userTeam.setUserId(user.getId());
+        userTeam.setTeamId(team.getId());
+        userTeam.setJoinTime(new Date());
+        userTeamMapper.insert(userTeam);
+    }
+
+    private long countMembers(Team team) {
+        QueryWrapper<UserTeam> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("teamId", team.getId());
+        return userTeamMapper.selectCount(queryWrapper);
+    }
+
+    private static TeamJoinRequest joinRequest(Team team) {
+        TeamJoinRequest teamJoinRequest = new TeamJoinRequest();
+        teamJoinRequest.setTeamId(team.getId());
+        return teamJoinRequest;
+    }
+
+    @Configuration
+    @MapperScan(basePackages = "com.arteon.mapper")
+    static class Config {
+
+        private final int redisPort = freePort();
+
+        @Bean(initMethod = "start", destroyMethod = "stop")
+        public RedisServer redisServer() throws IOException {
+            return new RedisServer(redisPort);
+        }
+
+        @Bean(destroyMethod = "shutdown")
+        public RedissonClient redissonClient(RedisServer redisServer) {
+            org.redisson.config.Config config = new org.redisson.config.Config();
+            config.useSingleServer().setAddress("redis://127.0.0.1:" + redisPort);
+            return Redisson.create(config);
+        }
+
+        @Bean
+        public LettuceConnectionFactory redisConnectionFactory(RedisServer redisServer) {
+            return new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redisPort));
+        }
+
+        @Bean
+        public StringRedisTemplate stringRedisTemplate(LettuceConnectionFactory redisConnectionFactory) {
+            return new StringRedisTemplate(redisConnectionFactory);
+        }
+
+        @Bean(destroyMethod = "close")
+        public HikariDataSource dataSource() {
+            HikariDataSource dataSource = new HikariDataSource();
+            // 等行锁的时间要比测试里排队的时间长
+            dataSource.setJdbcUrl("jdbc:h2:mem:team_join;MODE=MySQL;NON_KEYWORDS=USER;LOCK_TIMEOUT=30000;"
+                    + "DB_CLOSE_DELAY=-1");
+            dataSource.setMaximumPoolSize(THREADS + 5);
+            new ResourceDatabasePopulator(new ClassPathResource("team_join_schema.sql")).execute(dataSource);
+            return dataSource;
+        }
+
+        @Bean
+        public MybatisSqlSessionFactoryBean sqlSessionFactory(DataSource dataSource) {
+            MybatisSqlSessionFactoryBean factoryBean = new MybatisSqlSessionFactoryBean();
+            factoryBean.setDataSource(dataSource);
+            MybatisConfiguration configuration = new MybatisConfiguration();
+            configuration.setMapUnderscoreToCamelCase(false);
+            factoryBean.setConfiguration(configuration);
+            return factoryBean;
+        }
+
+        @Bean
+        public DataSourceTransactionManager transactionManager(DataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+
+        @Bean
+        public TransactionTemplate transactionTemplate(DataSourceTransactionManager transactionManager) {
+            return new TransactionTemplate(transactionManager);
+        }
+
+        @Bean
+        public TeamConfig teamConfig() {
+            return new TeamConfig();
+        }
+
+        @Bean
+        public UserTeamService userTeamService() {
+            return new UserTeamServiceImpl();
+        }
+
+        @Bean
+        public TeamAdmissionService teamAdmissionService() {
+            return new TeamAdmissionServiceImpl();
+        }
+
+        @Bean
+        public TeamService teamService() {
+            return new TeamServiceImpl();
+        }
+
+        private static int freePort() {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                return socket.getLocalPort();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
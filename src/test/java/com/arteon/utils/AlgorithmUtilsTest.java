@@ -0,0 +1,60 @@
+package com.arteon.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 编辑距离算法测试
+ */
+public class AlgorithmUtilsTest {
+
+    @Test
+    public void intVersionMatchesStringVersion() {
+        Random random = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            int[] a = randomTags(random);
+            int[] b = randomTags(random);
+            int expected = AlgorithmUtils.minDistance(toStringList(a), toStringList(b));
+            Assertions.assertEquals(expected, AlgorithmUtils.minDistance(a, b), Arrays.toString(a) + Arrays.toString(b));
+        }
+    }
+
+    @Test
+    public void boundedVersionIsExactWithinBound() {
+        Random random = new Random(7);
+        for (int round = 0; round < 1000; round++) {
+            int[] a = randomTags(random);
+            int[] b = randomTags(random);
+            int exact = AlgorithmUtils.minDistance(a, b);
+            int bound = random.nextInt(6);
+            int bounded = AlgorithmUtils.minDistance(a, b, bound);
+            if (exact <= bound) {
+                Assertions.assertEquals(exact, bounded);
+            } else {
+                Assertions.assertEquals(bound + 1, bounded);
+            }
+        }
+    }
+
+    private static int[] randomTags(Random random) {
+        int[] tags = new int[random.nextInt(8)];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = random.nextInt(5);
+        }
+        return tags;
+    }
+
+    private static List<String> toStringList(int[] tags) {
+        List<String> list = new ArrayList<>();
+        for (int tag : tags) {
+            list.add("tag" + tag);
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.arteon.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 相似度算法测试
+ */
+public class SimilarityStrategyTest {
+
+    @Test
+    public void jaccardIgnoresOrder() {
+        TagVector a = TagVector.of(new int[]{1, 2, 3});
+        TagVector b = TagVector.of(new int[]{3, 2, 1});
+        TagVector c = TagVector.of(new int[]{1, 70, -1});
+        Assertions.assertEquals(0, JaccardSimilarity.INSTANCE.distance(a, b, 1), 1e-9);
+        // 交集 {1}，并集 {1, 2, 3, 70, 未知标签}
+        Assertions.assertEquals(1 - 1.0 / 5, JaccardSimilarity.INSTANCE.distance(a, c, 1), 1e-9);
+    }
+
+    @Test
+    public void cosinePrefersRareTags() {
+        // 标签 0 人人都有，标签 1 很少人有
+        double[] idf = {1.0, 3.0, 1.0};
+        IdfCosineSimilarity cosine = new IdfCosineSimilarity(idf, 3.0);
+        TagVector query = TagVector.of(new int[]{0, 1});
+        TagVector sharesRare = TagVector.of(new int[]{1, 2});
+        TagVector sharesCommon = TagVector.of(new int[]{0, 2});
+        Assertions.assertTrue(cosine.distance(sharesRare, query, 1) < cosine.distance(sharesCommon, query, 1));
+        Assertions.assertEquals(0, cosine.distance(query, query, 1), 1e-9);
+    }
+
+    @Test
+    public void cosineCachedNormsMatchDirectComputation() {
+        double[] idf = {1.0, 3.0, 2.0};
+        IdfCosineSimilarity cosine = new IdfCosineSimilarity(idf, 4.0);
+        TagVector query = TagVector.of(new int[]{0, 1, -1});
+        TagVector[] candidates = {TagVector.of(new int[]{1, 2}), TagVector.of(new int[]{0, 5}), TagVector.of(new int[]{2})};
+        double[] norms = new double[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            norms[i] = cosine.squaredNorm(candidates[i]);
+        }
+        SimilarityStrategy cached = new IdfCosineSimilarity(idf, 4.0, norms).forQuery(query);
+        for (int i = 0; i < candidates.length; i++) {
+            Assertions.assertEquals(cosine.distance(candidates[i], query, 1),
+                    cached.distance(candidates[i], i, query, 1), 1e-12);
+        }
+    }
+
+    @Test
+    public void editDistanceKeepsOrder() {
+        TagVector a = TagVector.of(new int[]{1, 2, 3});
+        TagVector b = TagVector.of(new int[]{3, 2, 1});
+        Assertions.assertEquals(2, EditDistanceSimilarity.INSTANCE.distance(a, b, Double.POSITIVE_INFINITY), 1e-9);
+    }
+
+}
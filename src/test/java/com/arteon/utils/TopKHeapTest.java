@@ -0,0 +1,46 @@
+package com.arteon.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 有界 Top-K 堆测试
+ */
+public class TopKHeapTest {
+
+    @Test
+    public void keepsBestKInOrder() {
+        TopKHeap heap = new TopKHeap(3);
+        heap.offer(1, 5);
+        heap.offer(2, 1);
+        heap.offer(3, 4);
+        heap.offer(4, 0);
+        heap.offer(5, 9);
+        Assertions.assertEquals(3, heap.size());
+        Assertions.assertArrayEquals(new long[]{4, 2, 3}, heap.sortedIds());
+        Assertions.assertEquals(4, heap.cutoff());
+    }
+
+    @Test
+    public void tiesAreBrokenByIdRegardlessOfOrder() {
+        TopKHeap heap = new TopKHeap(2);
+        heap.offer(9, 1);
+        heap.offer(3, 1);
+        heap.offer(7, 1);
+        heap.offer(1, 1);
+        Assertions.assertArrayEquals(new long[]{1, 3}, heap.sortedIds());
+    }
+
+    @Test
+    public void mergeEqualsSingleHeap() {
+        TopKHeap left = new TopKHeap(2);
+        TopKHeap right = new TopKHeap(2);
+        left.offer(1, 3);
+        left.offer(2, 2);
+        right.offer(3, 1);
+        right.offer(4, 2);
+        left.merge(right);
+        Assertions.assertArrayEquals(new long[]{3, 2}, left.sortedIds());
+    }
+
+}
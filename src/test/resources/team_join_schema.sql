@@ -0,0 +1,38 @@
+-- 并发加入队伍测试用的表结构（H2 MySQL 兼容模式，只保留用到的字段）
+
+create table if not exists user
+(
+    id         bigint auto_increment primary key,
+    username   varchar(256),
+    tags       varchar(1024),
+    createTime datetime default CURRENT_TIMESTAMP not null,
+    updateTime datetime default CURRENT_TIMESTAMP not null,
+    isDelete   tinyint  default 0                 not null
+);
+
+create table if not exists team
+(
+    id          bigint auto_increment primary key,
+    name        varchar(256)                       not null,
+    description varchar(1024),
+    maxNum      int      default 1                 not null,
+    memberCount int      default 0                 not null,
+    expireTime  datetime,
+    userId      bigint,
+    status      int      default 0                 not null,
+    password    varchar(512),
+    createTime  datetime default CURRENT_TIMESTAMP not null,
+    updateTime  datetime default CURRENT_TIMESTAMP not null,
+    isDelete    tinyint  default 0                 not null
+);
+
+create table if not exists user_team
+(
+    id         bigint auto_increment primary key,
+    userId     bigint,
+    teamId     bigint,
+    joinTime   datetime,
+    createTime datetime default CURRENT_TIMESTAMP not null,
+    updateTime datetime default CURRENT_TIMESTAMP not null,
+    isDelete   tinyint  default 0                 not null
+);